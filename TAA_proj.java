@@ -1,25 +1,116 @@
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.lang.Math;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.io.File; 
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Random;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToLongFunction;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 import java.io.FileNotFoundException; 
 import java.util.Scanner;
 import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.io.IOException;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
 
 public class TAA_proj {
+    static boolean exactGeometry; // --exact: use ExactRays in the batch, layers, all-guards, multi, place, locate, serve and stress modes
+    static String cacheDir; // --cache <dir>: read the partitioned polygons from (and save them to) a PartitionCache in this directory
 
     public static void main(String[] args) throws Exception {
+        while (args.length > 0 && (args[0].equals("--exact") || args[0].equals("--cache") && args.length > 1)) { // options go before the mode
+            if (args[0].equals("--exact")) { // java TAA_proj --exact --batch|--layers|--all-guards|--multi|--place|--locate|--serve|--stress ...
+                exactGeometry = true;
+                args = Arrays.copyOfRange(args, 1, args.length);
+            } else { // java TAA_proj --cache <dir> [--batch|--layers|--all-guards|--multi|--place|--locate|--serve ...]
+                cacheDir = args[1];
+                args = Arrays.copyOfRange(args, 2, args.length);
+            }
+        }
+        if (args.length > 0 && args[0].equals("--batch")) { // headless mode: java TAA_proj --batch <polygon file> <query file> <output file> [metrics file]
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--all-guards")) { // every vertex as guard: java TAA_proj --all-guards <polygon file> <k values> <output file>
+            runAllGuards(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--layers")) { // every k at once: java TAA_proj --layers <polygon file> <guard file> <output file>
+            runLayers(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--multi")) { // several guards at once: java TAA_proj --multi <polygon file> <guard file> <k> <output file>
+            runMulti(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--place")) { // choose the guards: java TAA_proj --place <polygon file> <k> <max guards> <output file>
+            runPlace(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--locate")) { // walls to many points: java TAA_proj --locate <polygon file> <x> <y> <k> <points file> <output file>
+            runLocate(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) { // query server on loopback: java TAA_proj --serve <port> [--cache-mb <n>] [polygon file ...]
+            runServe(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--generate")) { // random polygons: java TAA_proj --generate <count> <vertices> <seed> [expand]
+            runGenerate(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--stress")) { // random polygons into the engine: java TAA_proj --stress <count> <vertices> <seed> <k>
+            runStress(args);
+            return;
+        }
+
         System.out.println("Insert 0 to generate a permutomino or insert 1 to use a precomputed file");
 
         Scanner scanner = new Scanner(System.in);
@@ -30,39 +121,22 @@ public class TAA_proj {
             userInput = scanner.nextInt();
         }
 
-        String filename = "exemplo_grid";
+        String filename = "exemplo";
 
         if (userInput == 0) {
             System.out.println("Please select the desired number of vertices");
 
-            String polyInput = "1 " + scanner.nextInt();
+            int n = scanner.nextInt();
             scanner.nextLine();
-            try {
-                // Define the commands to run
-                String[] commands = {
-                    "gcc -o poly GenPols_RectParts_TAA/swerc_inflate_cut.c",
-                    "gcc -o draw GenPols_RectParts_TAA/draw_orthopol.c",
-                    "gcc -o grid GenPols_RectParts_TAA/gridnew.c",
-                    "./poly > exemplo",
-                    "./draw < exemplo > exemplo.tex",
-                    "pdflatex exemplo.tex",
-                    "./grid < exemplo > exemplo_grid",
-                    "./draw < exemplo_grid > exemplo_grid.tex",
-                    "pdflatex exemplo_grid.tex"
-                };
-
-                // Execute each command
-                for (int i = 0; i < 3; i++) {
-                    runCommand(commands[i]);
-                }
+            while (n % 2 != 0 || n < 4) {
+                System.out.println("Invalid number of vertices, please pick an even number (at least 4).");
+                n = scanner.nextInt();
+                scanner.nextLine();
+            }
 
-                runCommandWithInput(commands[3], polyInput);
-    
-                for (int i = 4; i < commands.length; i++) {
-                    runCommand(commands[i]);
-                }
-            } catch (IOException | InterruptedException e) {
-                e.printStackTrace();
+            Vertex[] permutomino = new PolygonGenerator(System.nanoTime()).permutomino(n);
+            try (BufferedWriter polyWriter = new BufferedWriter(new FileWriter(filename))) {
+                writePolygon(polyWriter, permutomino);
             }
         }
         else if (userInput == 1) {
@@ -73,52 +147,32 @@ public class TAA_proj {
         
 
         try {
-            File myObj = new File(filename);
-            Scanner myReader = new Scanner(myObj);
-            int n = myReader.nextInt();
-            Vertex[] vertices = new Vertex[n];
-            List<Vertex[]> partitions = new ArrayList<>();
-            HashMap<Vertex,List<Vertex>> nextV = new HashMap<>();
-            FileWriter myWriter = new FileWriter("polygon.txt");
-           
-
-            for (int i=0; i<n; i++) {
-                vertices[i] = new Vertex(myReader.nextDouble(), myReader.nextDouble());
-              }
-
-            System.out.println("\nPlease select a guard vertex from the list below and the visibility level you desire. (use format 'x y k'):");
+            NumberReader myReader = new NumberReader(filename);
+            Vertex[] vertices = readVertices(myReader);
+            int n = vertices.length;
+            BufferedWriter myWriter = new BufferedWriter(new FileWriter("polygon.txt"));
+
+            System.out.println("\nPlease select a guard, a vertex from the list below or any point inside the polygon, and the visibility level you desire. (use format 'x y k'):");
             for (Vertex v : vertices) {
                 System.out.print("(" + v.x + "," + v.y + "); ");
             }
             System.out.println();
 
-            int x = (int) scanner.nextFloat();
-            int y = (int) scanner.nextFloat();
+            double x = scanner.nextDouble();
+            double y = scanner.nextDouble();
             int k_modem = scanner.nextInt();
             scanner.nextLine();
 
-            Vertex guard = null;
-
-            for (Vertex v : vertices) {
-                if (v.x == x && v.y == y) {
-                    guard = v;
-                    break;
-                }
-            }
+            Vertex guard = guardAt(vertices, x, y);
 
             while (guard == null) {
-                System.out.println("Invalid guard vertex. Please choose again.");
+                System.out.println("Invalid guard, it must be inside the polygon. Please choose again.");
 
-                x = scanner.nextInt();
-                y = scanner.nextInt();
+                x = scanner.nextDouble();
+                y = scanner.nextDouble();
                 scanner.nextLine();
 
-                for (Vertex v : vertices) {
-                    if (v.x == x && v.y == y) {
-                        guard = v;
-                        break;
-                    }
-                }
+                guard = guardAt(vertices, x, y);
             }
 
             while (k_modem % 2 != 0) {
@@ -132,221 +186,553 @@ public class TAA_proj {
             myWriter.write(n + "\n");
 
             for (int i = 0; i < n; i++) {
-                myWriter.write(vertices[i].x + " " + vertices[i].y + "\n");
+                DCEL.writeVertex(myWriter, vertices[i]);
             }
 
 
-            DCEL dcel = new DCEL();
-            dcel.createDCELFromPolygon(vertices);
+            DCEL dcel = cacheDir == null ? buildPartitionedDCEL(vertices) : partitionSnapshot(vertices, new Metrics()).instantiate();
+            dcel.computeVisibility(guard);
+            dcel.mergeFaces(k_modem, guard, myWriter);
+            myWriter.close();
+            scanner.close();
+
+            executePythonScript("plot.py");
+
+          } catch (FileNotFoundException e) {
+            System.out.println("File not found.");
+            e.printStackTrace();
+          }
+    }
+
+
+    // Builds the DCEL of the polygon partitioned by the chords of its H/V partition
+    public static DCEL buildPartitionedDCEL(Vertex[] vertices) {
+        Set<Long> partitions = new HashSet<>(); // pairs of ids (in keys) of the endpoints of the partitions already added
+        VertexIndex keys = new VertexIndex();
+        DCEL dcel = new DCEL();
+        dcel.metrics.begin(Metrics.Phase.PARTITION);
+        dcel.createDCELFromPolygon(vertices);
 
+        for (Vertex[] chord : HVPartitioner.chords(vertices)) {
+            int ogId = keys.findOrAdd(chord[0]);
+            int endId = keys.findOrAdd(chord[1]);
+            long part = ((long) Math.min(ogId, endId) << 32) | Math.max(ogId, endId);
+            if (!partitions.add(part)) continue; // two reflex vertices facing each other give the same chord
 
-            // HERE STARTS THE CODE TO CREATE THE H/V PARTITIONS
-            //ADAPTATION WAS NECESSARY AS OUR ADDPARTITION FUNCTION ONLY WORKS WHEN THE EDGES TO ADD HAVE BOTH ENDPOINTS ON THE POLYGON'S EXTERIOR
-            while (myReader.hasNextDouble()) {
-                Double og_x = myReader.nextDouble();
-                Double og_y = myReader.nextDouble();
-                Double end_x = myReader.nextDouble();
-                Double end_y = myReader.nextDouble();
-                Vertex origin = new Vertex(og_x, og_y);
-                Vertex end = new Vertex(end_x, end_y);
+            dcel.addPartition(chord[0], chord[1]);
+        }
 
-                boolean exists = false;
-                for (Vertex v : nextV.keySet()) {
-                    if (v.equals(origin)) {
-                        List<Vertex> toV = nextV.get(v);
-                        toV.add(end);
-                        nextV.put(v, toV);
-                        exists = true;
-                        break;
-                    }
-                }
-                if(exists == false) {
-                    List<Vertex> toV = new ArrayList<>();
-                    toV.add(end);
-                    nextV.put(origin,toV);   
-                }
+        dcel.metrics.end(Metrics.Phase.PARTITION);
+        return dcel;
+    }
+
+    // Same as buildPartitionedDCEL on the compact representation, which needs much less memory for large polygons
+    public static CompactDCEL buildPartitionedCompactDCEL(Vertex[] vertices) {
+        return buildPartitionedCompactDCEL(vertices, new Metrics());
+    }
+
+    public static CompactDCEL buildPartitionedCompactDCEL(Vertex[] vertices, Metrics metrics) {
+        Set<Long> partitions = new HashSet<>();
+        VertexIndex keys = new VertexIndex();
+        CompactDCEL dcel = new CompactDCEL();
+        dcel.metrics = metrics;
+        dcel.metrics.begin(Metrics.Phase.PARTITION);
+        dcel.createDCELFromPolygon(vertices);
+
+        for (Vertex[] chord : HVPartitioner.chords(vertices)) {
+            int ogId = keys.findOrAdd(chord[0]);
+            int endId = keys.findOrAdd(chord[1]);
+            long part = ((long) Math.min(ogId, endId) << 32) | Math.max(ogId, endId);
+            if (!partitions.add(part)) continue;
+
+            dcel.addPartition(chord[0], chord[1]);
+        }
+
+        dcel.metrics.end(Metrics.Phase.PARTITION);
+        return dcel;
+    }
+
+    // The partitioned polygon, read from the --cache directory if it was saved there and otherwise built (and saved, if there is a directory).
+    // The time and the counters of either go to metrics
+    static DCELSnapshot partitionSnapshot(Vertex[] vertices, Metrics metrics) {
+        if (cacheDir == null) return new DCELSnapshot(buildPartitionedCompactDCEL(vertices, metrics));
+
+        PartitionCache cache = new PartitionCache(cacheDir);
+        metrics.begin(Metrics.Phase.PARTITION);
+        DCELSnapshot snapshot = cache.load(vertices);
+        metrics.end(Metrics.Phase.PARTITION);
+        if (snapshot == null) {
+            snapshot = new DCELSnapshot(buildPartitionedCompactDCEL(vertices, metrics));
+            cache.save(vertices, snapshot);
+        }
+        return snapshot;
+    }
+
+    // Whether computeVisibility can use ExactRays on this polygon, as asked with --exact
+    static boolean exactFor(Vertex[] vertices) {
+        if (!exactGeometry) return false;
+        if (ExactRays.supports(Arrays.asList(vertices))) return true;
+        System.err.println("--exact needs an orthogonal polygon, using doubles instead");
+        return false;
+    }
+
+    // Answers every "x y k" query of the query file against the same polygon, which is read and partitioned only once
+    public static void runBatch(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: java TAA_proj --batch <polygon file> <query file> <output file> [metrics file]");
+            return;
+        }
+
+        NumberReader myReader = new NumberReader(args[1]);
+        Vertex[] vertices = readVertices(myReader);
+        boolean exact = exactFor(vertices);
+        Metrics partitionMetrics = new Metrics();
+        DCELSnapshot base = partitionSnapshot(vertices, partitionMetrics);
+
+        BufferedWriter metricsWriter = args.length > 4 ? new BufferedWriter(new FileWriter(args[4])) : null; // one JSON line per run
+        if (metricsWriter != null) {
+            metricsWriter.write(partitionMetrics.toJson("\"event\":\"partition\",\"vertices\":" + vertices.length) + "\n");
+        }
+
+        NumberReader queries = new NumberReader(args[2]);
+        BufferedWriter myWriter = new BufferedWriter(new FileWriter(args[3]));
+
+        while (queries.hasNext()) {
+            double x = queries.nextDouble();
+            double y = queries.nextDouble();
+            int k_modem = queries.nextInt();
+
+            Vertex guard = guardAt(vertices, x, y);
+
+            if (guard == null || k_modem % 2 != 0) {
+                System.err.println("Skipping query (" + x + "," + y + ") k=" + k_modem + ": guard must be inside the polygon and k must be even");
+                continue;
+            }
+
+            StringWriter result = new StringWriter(); // each query is written only once complete, so a failed query leaves no partial output
+            DCEL dcel = base.instantiate(); // computeVisibility and mergeFaces modify the DCEL they are called on
+            dcel.verbose = false;
+            dcel.exact = exact;
+            String query = "\"event\":\"query\",\"x\":" + x + ",\"y\":" + y + ",\"k\":" + k_modem;
+            try {
+                dcel.computeVisibility(guard);
+                result.write(guard.x + " " + guard.y + " " + k_modem + "\n");
+                dcel.mergeFaces(k_modem, guard, result);
+            } catch (RuntimeException e) {
+                System.err.println("Query (" + x + "," + y + ") k=" + k_modem + " failed: " + e);
+                if (metricsWriter != null) {metricsWriter.write(dcel.metrics.toJson(query + ",\"ok\":false") + "\n");}
+                continue;
             }
+            myWriter.append(result.getBuffer());
+            if (metricsWriter != null) {metricsWriter.write(dcel.metrics.toJson(query + ",\"ok\":true") + "\n");}
+        }
 
+        myWriter.close();
+        if (metricsWriter != null) {metricsWriter.close();}
+    }
 
-            for  (Vertex v : nextV.keySet()) {
-                Vertex origin = v;
+    // Evaluates every vertex of the polygon as a guard, in parallel, for each k of a comma separated list (e.g. 0,2,4)
+    public static void runAllGuards(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: java TAA_proj --all-guards <polygon file> <k values> <output file>");
+            return;
+        }
 
-                boolean ogInPoly = false;
-                for (HalfEdge e : dcel.externalEdges) { // check if end of segment is point in polygon
-                    for (Vertex next : nextV.get(v)) {
-                        Vertex i = dcel.line_intersect(origin, next, e.origin, e.next.origin);
-                        if (i!=null && i.equals(origin)) {
-                            ogInPoly = true;
-                            break;
-                        }
+        NumberReader myReader = new NumberReader(args[1]);
+        Vertex[] vertices = readVertices(myReader);
+        DCELSnapshot base = partitionSnapshot(vertices, new Metrics());
+
+        String[] kValues = args[2].split(",");
+        int[] ks = new int[kValues.length];
+        for (int i = 0; i < ks.length; i++) {
+            ks[i] = Integer.parseInt(kValues[i].trim());
+            if (ks[i] % 2 != 0) {
+                System.out.println("Invalid visibility " + ks[i] + ", please pick even numbers.");
+                return;
+            }
+        }
+
+        MultiGuardEvaluator evaluator = new MultiGuardEvaluator(base);
+        evaluator.exact = exactFor(vertices);
+        List<MultiGuardEvaluator.GuardResult> results = evaluator.evaluate(base.externalVertices(), ks, Runtime.getRuntime().availableProcessors());
+
+        BufferedWriter myWriter = new BufferedWriter(new FileWriter(args[3]));
+        MultiGuardEvaluator.GuardResult[] best = new MultiGuardEvaluator.GuardResult[ks.length];
+        for (MultiGuardEvaluator.GuardResult r : results) {
+            if (r.error != null) {
+                System.err.println("Guard (" + r.guard.x + "," + r.guard.y + ") failed: " + r.error);
+                continue;
+            }
+            for (int i = 0; i < ks.length; i++) {
+                myWriter.write(r.guard.x + " " + r.guard.y + " " + ks[i] + "\n");
+                myWriter.write(r.regions.get(i).size() + "\n");
+                for (List<Vertex> region : r.regions.get(i)) {
+                    myWriter.write(region.size() + "\n");
+                    for (Vertex v : region) {
+                        DCEL.writeVertex(myWriter, v);
                     }
                 }
-                if (ogInPoly == false) continue; // origin not in polygon edges
-
-                while (nextV.get(v).size() != 0){ 
-                    Vertex end = nextV.get(v).get(0);
-                    List<Vertex> vList = nextV.get(v);
-                    vList.remove(0); // remove end from list of origin's next vertices
-                    nextV.put(v,vList);
-
-                    boolean edgeExists = false;
-                    for (int i = 0; i<vertices.length; i++) { // check if edge already exists
-
-                        if (origin.y == end.y && vertices[i].y == vertices[(i+1)%vertices.length].y && end.y == vertices[i].y) {
-                            if (Math.max(origin.x,end.x) <= Math.max(vertices[i].x,vertices[(i+1)%vertices.length].x) && Math.min(origin.x,end.x) >= Math.min(vertices[i].x,vertices[(i+1)%vertices.length].x)) {
-                                edgeExists = true;
-                                break;
-                            }
-                        }
-                        if (origin.x == end.x && vertices[i].x == vertices[(i+1)%vertices.length].x && end.x == vertices[i].x) {
-                            if (Math.max(origin.y,end.y) <= Math.max(vertices[i].y,vertices[(i+1)%vertices.length].y) && Math.min(origin.y,end.y) >= Math.min(vertices[i].y,vertices[(i+1)%vertices.length].y)) {
-                                edgeExists = true;
-                                break;
-                            }
-                        }
-                    }
+                if (best[i] == null || r.area[i] > best[i].area[i]) {
+                    best[i] = r;
+                }
+            }
+        }
+        myWriter.close();
 
-                    if (edgeExists) continue;
+        for (int i = 0; i < ks.length; i++) {
+            if (best[i] != null) {
+                System.out.println("k=" + ks[i] + ": guard (" + best[i].guard.x + "," + best[i].guard.y + ") illuminates the largest area, " + best[i].area[i]);
+            }
+        }
+    }
 
-                    boolean reachEdge = false;
-                    for (HalfEdge e : dcel.externalEdges) { // check if end of segment is point in polygon edges
-                        Vertex i = dcel.line_intersect(origin, end, e.origin, e.next.origin);
-                        if (i!=null && i.equals(end)) {
-                            reachEdge = true;
-                            break;
-                        }
-                    }
+    // For every "x y" guard of the guard file, computes the visibility once and writes the illuminated regions of every k from 0 to the
+    // deepest face of the polygon, in the same format as batch mode
+    public static void runLayers(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.out.println("Usage: java TAA_proj --layers <polygon file> <guard file> <output file>");
+            return;
+        }
 
-                    Vertex next = null;
-                    while (!reachEdge) {
-                        List<Vertex> nextVs = null;
-                        for (Vertex ver : nextV.keySet()) {
-                            if (ver.equals(end)) {
-                                nextVs = nextV.get(ver);
-                            }
-                        }
+        NumberReader myReader = new NumberReader(args[1]);
+        Vertex[] vertices = readVertices(myReader);
+        boolean exact = exactFor(vertices);
+        DCELSnapshot base = partitionSnapshot(vertices, new Metrics());
 
+        NumberReader guards = new NumberReader(args[2]);
+        BufferedWriter myWriter = new BufferedWriter(new FileWriter(args[3]));
 
-                        for (Vertex ver: nextVs) {
-                            
-                            if (v.x == end.x && v.x == ver.x) {
-                                if ((end.y > v.y && ver.y > end.y) || (end.y < v.y && ver.y < end.y)) {
-                                    next = ver;
-                                    end = ver;
-                                    break;
-                                }
-                            }
-                            else if (v.y == end.y && v.y == ver.y) {
-                                if ((end.x > v.x && ver.x > end.x) || (end.x < v.x && ver.x < end.x)) {
-                                    next = ver;
-                                    end = ver;
-                                    break;
-                                }
-                            } 
-                        }
+        while (guards.hasNext()) {
+            double x = guards.nextDouble();
+            double y = guards.nextDouble();
 
-                        if (next != end) break;
+            Vertex guard = guardAt(vertices, x, y);
 
-                        for (HalfEdge e : dcel.externalEdges) { // check if end of segment is point in polygon edges
-                            Vertex i = dcel.line_intersect(origin, end, e.origin, e.next.origin);
-                            if (i!=null && i.equals(end)) {
-                                reachEdge = true;
-                                break;
-                            }
+            if (guard == null) {
+                System.err.println("Skipping guard (" + x + "," + y + "): guard must be inside the polygon");
+                continue;
+            }
+
+            StringWriter result = new StringWriter();
+            DCEL dcel = base.instantiate();
+            dcel.verbose = false;
+            dcel.exact = exact;
+            try {
+                dcel.computeVisibility(guard);
+                List<List<List<Vertex>>> levels = dcel.mergeAllLevels();
+                for (int i = 0; i < levels.size(); i++) {
+                    result.write(guard.x + " " + guard.y + " " + 2*i + "\n");
+                    result.write(levels.get(i).size() + "\n");
+                    for (List<Vertex> region : levels.get(i)) {
+                        result.write(region.size() + "\n");
+                        for (Vertex v : region) {
+                            DCEL.writeVertex(result, v);
                         }
                     }
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Guard (" + x + "," + y + ") failed: " + e);
+                continue;
+            }
+            myWriter.append(result.getBuffer());
+        }
 
-                    if (!reachEdge) {continue;}
+        myWriter.close();
+    }
 
-                    boolean doneP = false;
-                    for (Vertex[] p : partitions) {
-                        if ((p[0].equals(origin) && p[1].equals(end)) || (p[0].equals(end) && p[1].equals(origin))) { // check if partition has been added before
-                            doneP = true;
-                            break;
-                        }
-                    }
-                    
-                    if (doneP) continue;
+    // Illuminates the polygon from every "x y" guard of the guard file at once: a point is illuminated if it has at most k walls to some guard,
+    // and is served by the guard with the fewest walls to it. Writes, for each guard, the regions it serves in the same format as batch mode
+    public static void runMulti(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.out.println("Usage: java TAA_proj --multi <polygon file> <guard file> <k> <output file>");
+            return;
+        }
+
+        NumberReader myReader = new NumberReader(args[1]);
+        Vertex[] vertices = readVertices(myReader);
+        int k_modem = Integer.parseInt(args[3]);
+        if (k_modem % 2 != 0) {
+            System.out.println("Invalid visibility, please pick an even number.");
+            return;
+        }
+
+        List<Vertex> guards = new ArrayList<>();
+        NumberReader guardReader = new NumberReader(args[2]);
+        while (guardReader.hasNext()) {
+            double x = guardReader.nextDouble();
+            double y = guardReader.nextDouble();
+            Vertex guard = guardAt(vertices, x, y);
+            if (guard == null) {
+                System.err.println("Skipping guard (" + x + "," + y + "): guard must be inside the polygon");
+                continue;
+            }
+            guards.add(guard);
+        }
+        if (guards.isEmpty()) {
+            System.out.println("No guard of " + args[2] + " is inside the polygon, please give at least one.");
+            return;
+        }
 
-                    dcel.addPartition(origin,end);
-                    Vertex[] part = {origin, end};
-                    partitions.add(part);
-                } 
+        DCEL dcel = partitionSnapshot(vertices, new Metrics()).instantiate();
+        dcel.verbose = false;
+        dcel.exact = exactFor(vertices);
+        int[] server = dcel.computeVisibility(guards);
+        List<List<List<Vertex>>> served = dcel.mergeServedRegions(k_modem, server, guards.size());
+        double[] area = dcel.servedAreas(k_modem, server, guards.size());
+
+        BufferedWriter myWriter = new BufferedWriter(new FileWriter(args[4]));
+        double covered = 0;
+        for (int g = 0; g < guards.size(); g++) {
+            Vertex guard = guards.get(g);
+            myWriter.write(guard.x + " " + guard.y + " " + k_modem + "\n");
+            myWriter.write(served.get(g).size() + "\n");
+            for (List<Vertex> region : served.get(g)) {
+                myWriter.write(region.size() + "\n");
+                for (Vertex v : region) {
+                    DCEL.writeVertex(myWriter, v);
+                }
             }
+            System.out.println("Guard (" + guard.x + "," + guard.y + ") serves an area of " + area[g]);
+            covered += area[g];
+        }
+        myWriter.close();
+        System.out.println("Illuminated area " + covered + " of " + DCEL.area(Arrays.asList(vertices)));
+    }
 
+    // Chooses guards among the vertices of the polygon, and the points inside it on a grid of the given step if there is one (see GuardPlacer),
+    // until all of it is illuminated with k, or until max guards are chosen (0 for no limit), and writes them to the output file in the format
+    // of a guard file ("x y" per line), ready for --multi
+    public static void runPlace(String[] args) throws Exception {
+        if (args.length < 5) {
+            System.out.println("Usage: java TAA_proj --place <polygon file> <k> <max guards> <output file> [grid step]");
+            return;
+        }
 
-            dcel.computeVisibility(guard);
-            dcel.mergeFaces(k_modem, guard, myWriter);
-            myWriter.close();
-            scanner.close();
-            myReader.close();
+        NumberReader myReader = new NumberReader(args[1]);
+        Vertex[] vertices = readVertices(myReader);
+        int k_modem = Integer.parseInt(args[2]);
+        int budget = Integer.parseInt(args[3]);
+        if (k_modem % 2 != 0) {
+            System.out.println("Invalid visibility, please pick an even number.");
+            return;
+        }
 
-            executePythonScript("plot.py");
+        DCELSnapshot base = partitionSnapshot(vertices, new Metrics());
+        GuardPlacer placer = new GuardPlacer(base, k_modem);
+        placer.exact = exactFor(vertices);
+        double total = DCEL.area(Arrays.asList(vertices));
 
-          } catch (FileNotFoundException e) {
-            System.out.println("File not found.");
-            e.printStackTrace();
-          }
+        List<Vertex> candidates = new ArrayList<>(base.externalVertices());
+        VertexIndex seen = new VertexIndex();
+        for (Vertex v : candidates) {
+            seen.findOrAdd(v);
+        }
+        if (args.length > 5) {
+            double step = Double.parseDouble(args[5]);
+            if (step <= 0) {
+                System.out.println("The grid step must be positive.");
+                return;
+            }
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (Vertex v : vertices) {
+                minX = Math.min(minX, v.x);
+                minY = Math.min(minY, v.y);
+                maxX = Math.max(maxX, v.x);
+                maxY = Math.max(maxY, v.y);
+            }
+            for (int i = 0; minX + i * step <= maxX; i++) {
+                for (int j = 0; minY + j * step <= maxY; j++) {
+                    Vertex guard = guardAt(vertices, minX + i * step, minY + j * step);
+                    if (guard != null && seen.indexOf(guard) < 0) {
+                        seen.add(guard);
+                        candidates.add(guard);
+                    }
+                }
+            }
+        }
+        List<GuardPlacer.Step> steps = placer.place(candidates, budget, total, Runtime.getRuntime().availableProcessors());
+
+        BufferedWriter myWriter = new BufferedWriter(new FileWriter(args[4]));
+        for (GuardPlacer.Step step : steps) {
+            myWriter.write(step.guard.x + " " + step.guard.y + "\n");
+            System.out.println("Guard (" + step.guard.x + "," + step.guard.y + ") adds an area of " + step.gain + ", illuminated " + step.covered
+                               + " of " + total + " (" + step.evaluations + " evaluations)");
+        }
+        myWriter.close();
     }
 
+    // For a guard, writes for every "x y" point of the points file the number of walls between it and the guard (-1 if the point is outside
+    // the polygon) and whether that makes it illuminated with the given k (1 or 0). Visibility is computed once and the points are located
+    // in its faces with a PointLocator
+    public static void runLocate(String[] args) throws Exception {
+        if (args.length < 7) {
+            System.out.println("Usage: java TAA_proj --locate <polygon file> <x> <y> <k> <points file> <output file>");
+            return;
+        }
 
-//------------------------------------------ AUXILIARY SCRIPTS TO EXECUTE PYTHON FILES AND RUN SHELL COMMANDS FROM JAVA ------------------------------------------ //
+        NumberReader myReader = new NumberReader(args[1]);
+        Vertex[] vertices = readVertices(myReader);
+        Vertex guard = guardAt(vertices, Double.parseDouble(args[2]), Double.parseDouble(args[3]));
+        int k_modem = Integer.parseInt(args[4]);
+        if (guard == null || k_modem % 2 != 0) {
+            System.out.println("The guard must be inside the polygon and k must be even.");
+            return;
+        }
 
-public static void executePythonScript(String scriptPath) throws IOException {
-    ProcessBuilder processBuilder = new ProcessBuilder("python", scriptPath);
-    processBuilder.inheritIO();
-    Process process = processBuilder.start();
-}
+        DCEL dcel = partitionSnapshot(vertices, new Metrics()).instantiate();
+        dcel.verbose = false;
+        dcel.exact = exactFor(vertices);
+        dcel.computeVisibility(guard);
+        PointLocator locator = new PointLocator(dcel);
+
+        NumberReader points = new NumberReader(args[5]);
+        BufferedWriter myWriter = new BufferedWriter(new FileWriter(args[6]));
+        while (points.hasNext()) {
+            int walls = locator.wallsAt(points.nextDouble(), points.nextDouble());
+            myWriter.write(Integer.toString(walls));
+            myWriter.write(walls >= 0 && walls <= k_modem ? " 1\n" : " 0\n");
+        }
+        myWriter.close();
+    }
 
+    // Answers queries over HTTP until the process is stopped, see QueryServer. The polygon files given are read and partitioned at start,
+    // any other one when it is first asked for. The results cached take at most --cache-mb megabytes (64 by default)
+    public static void runServe(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java TAA_proj --serve <port> [--cache-mb <n>] [--dir <polygon directory>] [polygon name ...]");
+            return;
+        }
 
-    private static void runCommand(String command) throws IOException, InterruptedException {
-        // Create a ProcessBuilder to run the command
-        ProcessBuilder processBuilder = new ProcessBuilder("bash", "-c", command);
-        processBuilder.redirectErrorStream(true); // Redirect error stream to the output stream
+        int first = 2; // first polygon name
+        long cacheMegabytes = 64;
+        Path directory = Paths.get("");
+        while (args.length > first + 1 && (args[first].equals("--cache-mb") || args[first].equals("--dir"))) {
+            if (args[first].equals("--cache-mb")) {cacheMegabytes = Long.parseLong(args[first + 1]);}
+            else {directory = Paths.get(args[first + 1]);}
+            first += 2;
+        }
+        QueryServer server = new QueryServer(Integer.parseInt(args[1]), Runtime.getRuntime().availableProcessors(), cacheMegabytes << 20,
+                                             directory.toAbsolutePath().normalize());
+        for (int i = first; i < args.length; i++) {
+            server.polygon(args[i]);
+        }
+        server.start();
+        System.out.println("Listening on http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.port() + "/query");
+    }
 
-        // Start the process
-        Process process = processBuilder.start();
+    // Writes random polygons to the standard output, one per line in the format of swerc_inflate_cut.c ("n x1 y1 ... xn yn")
+    public static void runGenerate(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: java TAA_proj --generate <count> <vertices> <seed> [expand]");
+            return;
+        }
+        int count = Integer.parseInt(args[1]);
+        int n = Integer.parseInt(args[2]);
+        boolean expand = args.length > 4 && args[4].equals("expand");
+        PolygonGenerator generator = new PolygonGenerator(Long.parseLong(args[3]));
+
+        BufferedWriter myWriter = new BufferedWriter(new OutputStreamWriter(System.out));
+        for (int i = 0; i < count; i++) {
+            Vertex[] polygon = generator.permutomino(n);
+            writePolygon(myWriter, expand ? generator.expand(polygon) : polygon);
+        }
+        myWriter.flush();
+    }
 
-        // Read the output of the command
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+    // Generates random permutominoes and runs each one through the engine (partition, visibility from a random vertex and merge of the faces
+    // with at most k walls), printing how long every phase took
+    public static void runStress(String[] args) {
+        if (args.length < 5) {
+            System.out.println("Usage: java TAA_proj --stress <count> <vertices> <seed> <k>");
+            return;
+        }
+        int count = Integer.parseInt(args[1]);
+        int n = Integer.parseInt(args[2]);
+        long seed = Long.parseLong(args[3]);
+        int k_modem = Integer.parseInt(args[4]);
+        PolygonGenerator generator = new PolygonGenerator(seed);
+        Random guards = new Random(seed);
+
+        System.out.println("instance generate_ms partition_ms visibility_ms merge_ms regions area");
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            Vertex[] vertices = generator.permutomino(n);
+            Vertex guard = vertices[guards.nextInt(n)];
+            long generated = System.nanoTime();
+            try {
+                DCEL dcel = buildPartitionedDCEL(vertices);
+                dcel.exact = exactGeometry; // generated polygons are always supported
+                long partitioned = System.nanoTime();
+                dcel.computeVisibility(guard);
+                long visible = System.nanoTime();
+                List<List<Vertex>> regions = dcel.mergeRegions(k_modem);
+                long merged = System.nanoTime();
+
+                double area = 0;
+                for (List<Vertex> region : regions) {
+                    area += DCEL.area(region);
+                }
+                System.out.println(i + " " + (generated - start) / 1000000 + " " + (partitioned - generated) / 1000000 + " " + (visible - partitioned) / 1000000
+                    + " " + (merged - visible) / 1000000 + " " + regions.size() + " " + area);
+            } catch (RuntimeException e) {
+                System.out.println(i + " failed for guard (" + guard.x + "," + guard.y + "): " + e);
             }
         }
-
-        // Wait for the process to finish
-        int exitCode = process.waitFor();
-        System.out.println("Command exited with code: " + exitCode);
     }
 
-    private static void runCommandWithInput(String command, String input) throws IOException, InterruptedException {
-        // Create a ProcessBuilder to run the command
-        ProcessBuilder processBuilder = new ProcessBuilder("bash", "-c", command);
-        processBuilder.redirectErrorStream(true); // Redirect error stream to the output stream
-
-        // Start the process
-        Process process = processBuilder.start();
+    public static void writePolygon(Writer myWriter, Vertex[] polygon) throws IOException {
+        myWriter.write(Integer.toString(polygon.length));
+        for (Vertex v : polygon) {
+            myWriter.write(" " + (long) v.x + " " + (long) v.y);
+        }
+        myWriter.write('\n');
+    }
 
-        // Provide input to the process
-        try (OutputStreamWriter writer = new OutputStreamWriter(process.getOutputStream())) {
-            writer.write(input);
-            writer.flush();
+    // The guard at (x, y): the vertex of the polygon there or, for any other point inside the polygon or on its boundary, that very point;
+    // null if it is outside. The rays of such a guard are found exactly (see ExactRays), as doubles get the corners they cut wrong
+    public static Vertex guardAt(Vertex[] vertices, double x, double y) {
+        for (Vertex v : vertices) {
+            if (v.x == x && v.y == y) {
+                return v;
+            }
         }
+        Vertex guard = new Vertex(x, y);
+        return inPolygon(vertices, guard) ? guard : null;
+    }
 
-        // Read the output of the command
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+    // Whether p is inside the polygon or on its boundary
+    public static boolean inPolygon(Vertex[] vertices, Vertex p) {
+        boolean in = false;
+        for (int i = 0; i < vertices.length; i++) {
+            Vertex a = vertices[i];
+            Vertex b = vertices[(i + 1) % vertices.length];
+            double cross = (b.x - a.x) * (p.y - a.y) - (b.y - a.y) * (p.x - a.x);
+            if (Math.abs(cross) < Vertex.EPSILON && p.x >= Math.min(a.x, b.x) && p.x <= Math.max(a.x, b.x) && p.y >= Math.min(a.y, b.y)
+                && p.y <= Math.max(a.y, b.y)) return true; // on the edge
+            if ((a.y > p.y) != (b.y > p.y) && p.x < a.x + (p.y - a.y) * (b.x - a.x) / (b.y - a.y)) {
+                in = !in; // the edge crosses the ray from p to the right
             }
         }
+        return in;
+    }
 
-        // Wait for the process to finish
-        int exitCode = process.waitFor();
-        System.out.println("Command exited with code: " + exitCode);
+    public static Vertex[] readVertices(NumberReader myReader) {
+        int n = myReader.nextInt();
+        Vertex[] vertices = new Vertex[n];
+        for (int i=0; i<n; i++) {
+            vertices[i] = new Vertex(myReader.nextDouble(), myReader.nextDouble());
+        }
+        return vertices;
     }
 
+//------------------------------------------------------- AUXILIARY SCRIPTS TO EXECUTE PYTHON FILES FROM JAVA ------------------------------------------------------- //
+
+public static void executePythonScript(String scriptPath) throws IOException {
+    ProcessBuilder processBuilder = new ProcessBuilder("python", scriptPath);
+    processBuilder.inheritIO();
+    Process process = processBuilder.start();
+}
+
 
 
 }
@@ -365,8 +751,14 @@ class Vertex {
         return Math.sqrt(dx * dx + dy * dy);
     }
 
-    private static final double EPSILON = 1e-5;
-    
+    static final double EPSILON = 1e-5;
+
+    // Whether other is the same point up to rounding, i.e. both coordinates within EPSILON. The geometry compares vertices with this
+    // (VertexIndex finds them with the same tolerance); equals is exact, as a tolerance cannot be hashed
+    public boolean near(Vertex other) {
+        return Math.abs(other.x - x) < EPSILON && Math.abs(other.y - y) < EPSILON;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -376,753 +768,3659 @@ class Vertex {
             return false;
         }
         Vertex vertex = (Vertex) obj;
-        return Math.abs(vertex.x - x) < EPSILON && Math.abs(vertex.y - y) < EPSILON;
+        return vertex.x == x && vertex.y == y;
     }
 
-}
+    @Override
+    public int hashCode() {
+        return 31 * Double.hashCode(x + 0.0) + Double.hashCode(y + 0.0); // + 0.0 turns -0.0 into 0.0, which equals does not tell apart
+    }
 
-class VertexComparator implements Comparator<Vertex> {
-    private Vertex guard;
+}
 
-    public VertexComparator(Vertex guard) {
-        this.guard = guard;
+// Finds vertices by their coordinates, with the same tolerance as Vertex.near, in constant time.
+// Coordinates are snapped to a grid of cells of side Vertex.EPSILON, so any vertex near a given one is in the same cell or in one of the 8 around it.
+// Cells are kept in an open addressing table and the vertices of the same cell are chained by index.
+// Points can also be added by their coordinates alone (get then returns null for them), which is how CompactDCEL uses it
+class VertexIndex {
+    private Vertex[] vertices;
+    private double[] xs, ys;
+    private int[] nextInCell; // next vertex in the same cell, -1 at the end of the chain
+    private int size;
+
+    private long[] cellX, cellY;
+    private int[] cellHead; // first vertex of the cell in each slot, -1 if the slot is empty
+    private int cells;
+
+    public VertexIndex() {
+        vertices = new Vertex[16];
+        xs = new double[16];
+        ys = new double[16];
+        nextInCell = new int[16];
+        cellX = new long[32];
+        cellY = new long[32];
+        cellHead = new int[32];
+        Arrays.fill(cellHead, -1);
     }
 
-    @Override
-    public int compare(Vertex v1, Vertex v2) {
-        double dist1 = v1.distanceTo(guard);
-        double dist2 = v2.distanceTo(guard);
+    public VertexIndex(VertexIndex other) { // independent copy
+        vertices = other.vertices.clone();
+        xs = other.xs.clone();
+        ys = other.ys.clone();
+        nextInCell = other.nextInCell.clone();
+        size = other.size;
+        cellX = other.cellX.clone();
+        cellY = other.cellY.clone();
+        cellHead = other.cellHead.clone();
+        cells = other.cells;
+    }
 
-        return Double.compare(dist2, dist1);
+    public int size() {
+        return size;
     }
-}
 
-class HalfEdge {
-    Vertex origin;
-    HalfEdge twin;
-    Face incidentFace;
-    HalfEdge next;
-    HalfEdge prev;
+    public Vertex get(int id) {
+        return vertices[id];
+    }
 
-    public HalfEdge(Vertex origin) {
-        this.origin = origin;
+    // Returns the id of a vertex near v, or -1 if there is none
+    public int indexOf(Vertex v) {
+        return indexOf(v.x, v.y);
     }
-}
 
-class Face implements Comparable<Face> {
-    HalfEdge outerComponent; // reference to one of the half-edges that bound the face
-    Vertex centroid;
-    int counter;
-    int modem;
+    // Same as indexOf(new Vertex(px, py))
+    public int indexOf(double px, double py) {
+        long cx = cell(px);
+        long cy = cell(py);
+        for (long x = cx - 1; x <= cx + 1; x++) {
+            for (long y = cy - 1; y <= cy + 1; y++) {
+                for (int i = cellHead[slot(x, y)]; i >= 0; i = nextInCell[i]) {
+                    if (Math.abs(xs[i] - px) < Vertex.EPSILON && Math.abs(ys[i] - py) < Vertex.EPSILON) { // as in Vertex.near
+                        return i;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
 
-    public Face(HalfEdge outerComponent, int counter) {
-        this.outerComponent = outerComponent;
-        this.counter = counter;
+    // Adds v (even if a vertex near it exists) and returns its id
+    public int add(Vertex v) {
+        int id = add(v.x, v.y);
+        vertices[id] = v;
+        return id;
     }
 
-    public void computeCentroid() { // computes the center of the face
-        HalfEdge startEdge = outerComponent;
-        HalfEdge e = startEdge;
-        double x = e.origin.x;
-        double y = e.origin.y;
-        int count = 1;
+    public int add(double px, double py) {
+        if (size == vertices.length) {
+            vertices = Arrays.copyOf(vertices, 2 * size);
+            xs = Arrays.copyOf(xs, 2 * size);
+            ys = Arrays.copyOf(ys, 2 * size);
+            nextInCell = Arrays.copyOf(nextInCell, 2 * size);
+        }
+        if (2 * (cells + 1) > cellHead.length) {
+            rehash();
+        }
 
-        while (!e.next.equals(startEdge)) {
-            e = e.next;
-            x += e.origin.x;
-            y += e.origin.y;
-            count++;
+        long cx = cell(px);
+        long cy = cell(py);
+        int slot = slot(cx, cy);
+        if (cellHead[slot] < 0) {
+            cellX[slot] = cx;
+            cellY[slot] = cy;
+            cells++;
         }
+        xs[size] = px;
+        ys[size] = py;
+        nextInCell[size] = cellHead[slot];
+        cellHead[slot] = size;
+        return size++;
+    }
 
-        x /= count;
-        y /= count;
+    // Returns the id of a vertex near v, adding v if there is none
+    public int findOrAdd(Vertex v) {
+        int id = indexOf(v);
+        return id >= 0 ? id : add(v);
+    }
 
-        Vertex c = new Vertex(x, y);
-        centroid = c;
+    public int findOrAdd(double px, double py) {
+        int id = indexOf(px, py);
+        return id >= 0 ? id : add(px, py);
     }
 
-    @Override
-    public int compareTo(Face other) {
-        if (this.centroid.y != other.centroid.y) {
-            return Double.compare(other.centroid.y, this.centroid.y);
-        } else {
-            return Double.compare(other.centroid.x, this.centroid.x);
+    private static long cell(double coordinate) {
+        return (long) Math.floor(coordinate / Vertex.EPSILON);
+    }
+
+    // Slot of the cell: the one holding it or the empty slot where it would be placed
+    private int slot(long cx, long cy) {
+        int mask = cellHead.length - 1;
+        long h = cx * 0x9E3779B97F4A7C15L + cy * 0xC2B2AE3D27D4EB4FL;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while (cellHead[slot] >= 0 && (cellX[slot] != cx || cellY[slot] != cy)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldX = cellX, oldY = cellY;
+        int[] oldHead = cellHead;
+        cellX = new long[2 * oldHead.length];
+        cellY = new long[2 * oldHead.length];
+        cellHead = new int[2 * oldHead.length];
+        Arrays.fill(cellHead, -1);
+        for (int i = 0; i < oldHead.length; i++) {
+            if (oldHead[i] >= 0) {
+                int slot = slot(oldX[i], oldY[i]);
+                cellX[slot] = oldX[i];
+                cellY[slot] = oldY[i];
+                cellHead[slot] = oldHead[i];
+            }
         }
     }
 }
 
+// Index of the edges of the polygon (DCEL.externalEdges) for segment, ray and point queries.
+// As the polygons are orthogonal, vertical edges are kept sorted by x and horizontal edges by y, and a query only visits the edges whose
+// fixed coordinate is within its range, in O(log n + candidates). Splitting an edge keeps both parts on the same line, so that coordinate never
+// changes, but the other one does: queries return a superset of the edges that may intersect and callers still do the exact test.
+// Edges are referenced by their position in the indexed list and are indexed lazily, on the first query after being added
+class EdgeIndex {
+    private static final double SLACK = 2 * Vertex.EPSILON; // intersections are rounded, so ranges are slightly enlarged
 
-class DCEL {
-    List<Vertex> vertices;
-    List<Vertex> externalVertices;
-    List<HalfEdge> halfEdges;
-    List<HalfEdge> externalEdges;
-    List<Face> faces;
+    private List<HalfEdge> edges;
+    private int indexed; // edges.get(0 .. indexed-1) are in the arrays below
 
-    public DCEL() {
-        vertices = new ArrayList<>();
-        externalVertices = new ArrayList<>();
-        halfEdges = new ArrayList<>();
-        externalEdges = new ArrayList<>();
-        faces = new ArrayList<>();
-    }
+    private double[] vKeys = new double[16], hKeys = new double[16]; // x of vertical edges, y of horizontal edges, sorted
+    private int[] vIds = new int[16], hIds = new int[16];
+    private int vSize, hSize;
+    private List<Integer> others = new ArrayList<>(); // neither vertical nor horizontal, always candidates
 
-    // Method to add a new vertex to the DCEL
-    public void addVertex(Vertex v) {
-        vertices.add(v);
+    public EdgeIndex(List<HalfEdge> edges) {
+        this.edges = edges;
     }
 
-    // Method to add a new edge to the DCEL
-    public void addEdge(HalfEdge e) {
-        halfEdges.add(e);
+    // Copy of other for a list with the same edges in the same positions (other is brought up to date first, unless it is itself a copy without a list)
+    public EdgeIndex(EdgeIndex other, List<HalfEdge> edges) {
+        if (other.edges != null) {other.update();}
+        this.edges = edges;
+        indexed = other.indexed;
+        vKeys = other.vKeys.clone();
+        hKeys = other.hKeys.clone();
+        vIds = other.vIds.clone();
+        hIds = other.hIds.clone();
+        vSize = other.vSize;
+        hSize = other.hSize;
+        others = new ArrayList<>(other.others);
     }
 
-    // Method to add a new external edge to the DCEL
-    public void addExternalEdge(HalfEdge e) {
-        externalEdges.add(e);
+    // Edges that may intersect the segment a -> b
+    public List<HalfEdge> segmentCandidates(Vertex a, Vertex b) {
+        update();
+        List<HalfEdge> out = new ArrayList<>();
+        if (a.x != b.x) { // vertical edges never intersect a vertical segment
+            collect(vKeys, vIds, vSize, Math.min(a.x, b.x) - SLACK, Math.max(a.x, b.x) + SLACK, out);
+        }
+        if (a.y != b.y) {
+            collect(hKeys, hIds, hSize, Math.min(a.y, b.y) - SLACK, Math.max(a.y, b.y) + SLACK, out);
+        }
+        addOthers(out);
+        return out;
     }
 
-    // Method to add a new face to the DCEL
-    public void addFace(Face f) {
-        faces.add(f);
+    // Edges that may intersect the ray that starts at a and has direction (dx, dy)
+    public List<HalfEdge> rayCandidates(Vertex a, double dx, double dy) {
+        update();
+        List<HalfEdge> out = new ArrayList<>();
+        if (dx != 0) {
+            collect(vKeys, vIds, vSize, dx > 0 ? a.x - SLACK : Double.NEGATIVE_INFINITY, dx > 0 ? Double.POSITIVE_INFINITY : a.x + SLACK, out);
+        }
+        if (dy != 0) {
+            collect(hKeys, hIds, hSize, dy > 0 ? a.y - SLACK : Double.NEGATIVE_INFINITY, dy > 0 ? Double.POSITIVE_INFINITY : a.y + SLACK, out);
+        }
+        addOthers(out);
+        return out;
     }
 
-    // Method to create a DCEL from an array of vertices representing a polygon in counter-clockwise order
-    public void createDCELFromPolygon(Vertex[] polygonVertices) {
-        int n = polygonVertices.length;
-        HalfEdge[] edges = new HalfEdge[n];
-        Face face = new Face(null, 1);
-        Face outerFace = new Face (null, 0);
-        
+    // Edges whose line passes through (or very close to) p
+    public List<HalfEdge> pointCandidates(Vertex p) {
+        update();
+        List<HalfEdge> out = new ArrayList<>();
+        collect(vKeys, vIds, vSize, p.x - SLACK, p.x + SLACK, out);
+        collect(hKeys, hIds, hSize, p.y - SLACK, p.y + SLACK, out);
+        addOthers(out);
+        return out;
+    }
 
-        // Create half-edges and vertices
-        for (int i = 0; i < n; i++) {
-            Vertex v = polygonVertices[i];
-            Vertex nextVertex = polygonVertices[(i + 1) % n];
-            HalfEdge edge = new HalfEdge(v);
-            HalfEdge twinEdge = new HalfEdge(nextVertex);
-            edge.twin = twinEdge;
-            twinEdge.twin = edge;
-            edge.incidentFace = face;
-            twinEdge.incidentFace = outerFace;
-            edges[i] = edge;
-            addVertex(v);
-            externalVertices.add(v);
-            addEdge(edge);
-            addEdge(twinEdge);
-            externalEdges.add(edge);
+    private void collect(double[] keys, int[] ids, int size, double min, double max, List<HalfEdge> out) {
+        int lo = 0, hi = size; // first key >= min
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < min) {lo = mid + 1;}
+            else {hi = mid;}
         }
+        for (int i = lo; i < size && keys[i] <= max; i++) {
+            out.add(edges.get(ids[i]));
+        }
+    }
 
-        // Linking next and previous half-edges
-        for (int i = 0; i < n; i++) {
-            edges[i].next = edges[(i + 1) % n];
-            edges[(i + 1) % n].prev = edges[i];
-            edges[i].twin.prev = edges[(i + 1) % n].twin;
-            edges[(i + 1) % n].twin.next = edges[i].twin;
+    private void addOthers(List<HalfEdge> out) {
+        for (int id : others) {
+            out.add(edges.get(id));
         }
+    }
 
-        // Set outer component for the face
-        face.outerComponent = edges[0];
-        outerFace.outerComponent = edges[0].twin;
+    private void update() {
+        if (indexed == edges.size()) return;
+
+        if (edges.size() - indexed > 16) { // many new edges: append them all and sort once
+            for (int id = indexed; id < edges.size(); id++) {
+                HalfEdge e = edges.get(id);
+                if (e.origin.x == e.next.origin.x) {
+                    vKeys = grow(vKeys, vSize);
+                    vIds = grow(vIds, vSize);
+                    vKeys[vSize] = e.origin.x;
+                    vIds[vSize++] = id;
+                }
+                else if (e.origin.y == e.next.origin.y) {
+                    hKeys = grow(hKeys, hSize);
+                    hIds = grow(hIds, hSize);
+                    hKeys[hSize] = e.origin.y;
+                    hIds[hSize++] = id;
+                }
+                else {
+                    others.add(id);
+                }
+            }
+            sort(vKeys, vIds, vSize);
+            sort(hKeys, hIds, hSize);
+        }
+        else { // a few new edges (e.g. from splitting an edge): insert them in place
+            for (int id = indexed; id < edges.size(); id++) {
+                HalfEdge e = edges.get(id);
+                if (e.origin.x == e.next.origin.x) {
+                    vKeys = grow(vKeys, vSize);
+                    vIds = grow(vIds, vSize);
+                    insert(vKeys, vIds, vSize++, e.origin.x, id);
+                }
+                else if (e.origin.y == e.next.origin.y) {
+                    hKeys = grow(hKeys, hSize);
+                    hIds = grow(hIds, hSize);
+                    insert(hKeys, hIds, hSize++, e.origin.y, id);
+                }
+                else {
+                    others.add(id);
+                }
+            }
+        }
+        indexed = edges.size();
+    }
 
-        addFace(face);
-        addFace(outerFace);
+    private static void insert(double[] keys, int[] ids, int size, double key, int id) {
+        int pos = size;
+        while (pos > 0 && keys[pos - 1] > key) {pos--;}
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+        keys[pos] = key;
+        ids[pos] = id;
     }
 
-    public void addPartition(Vertex origin, Vertex end) {
-        if (!vertices.contains(origin)) {
-            addVertex(origin);
+    private static void sort(double[] keys, int[] ids, int size) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {order[i] = i;}
+        Arrays.sort(order, (a, b) -> Double.compare(keys[a], keys[b]));
+        double[] sortedKeys = new double[size];
+        int[] sortedIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedKeys[i] = keys[order[i]];
+            sortedIds[i] = ids[order[i]];
         }
+        System.arraycopy(sortedKeys, 0, keys, 0, size);
+        System.arraycopy(sortedIds, 0, ids, 0, size);
+    }
 
-        HalfEdge h = null;
-        Face f = null;
+    private static double[] grow(double[] a, int size) {
+        return size < a.length ? a : Arrays.copyOf(a, 2 * a.length);
+    }
 
-        HalfEdge stop = null;
-        List<HalfEdge> intersectionsOg = new ArrayList<>();
+    private static int[] grow(int[] a, int size) {
+        return size < a.length ? a : Arrays.copyOf(a, 2 * a.length);
+    }
+}
 
-        for (HalfEdge e : halfEdges) {
-            if (e.incidentFace.counter == 0) continue; //discard HalfEdges incident to external face
-            Vertex i = seg_intersect(origin, end, e.origin, e.next.origin);
-            if (i != null && i.equals(origin)) {
-                intersectionsOg.add(e); // obtain all edges that intersect with the new edge
+// Vertices of a DCEL by their direction from a point, to find those near a segment of a line through that point (a piece of one of its rays)
+// without testing every vertex. Like EdgeIndex, vertices are indexed lazily from the DCEL's list, which is only appended to while rays are added
+class DirectionIndex {
+    private final Vertex center;
+    private final List<Vertex> vertices;
+    private int indexed; // vertices.get(0 .. indexed-1) are in byAngle
+    private final TreeMap<Double, List<Vertex>> byAngle = new TreeMap<>();
+
+    public DirectionIndex(Vertex center, List<Vertex> vertices) {
+        this.center = center;
+        this.vertices = vertices;
+    }
+
+    // A superset of the vertices within Vertex.EPSILON of the segment a -> b, which must be on a line through the center (up to rounding)
+    public List<Vertex> near(Vertex a, Vertex b) {
+        for (; indexed < vertices.size(); indexed++) {
+            Vertex v = vertices.get(indexed);
+            byAngle.computeIfAbsent(Math.atan2(v.y - center.y, v.x - center.x), angle -> new ArrayList<>()).add(v);
+        }
+
+        double nearest = Math.min(center.distanceTo(a), center.distanceTo(b)) - Vertex.EPSILON;
+        if (nearest <= 4 * Vertex.EPSILON) return vertices; // too close to the center for the directions to tell anything
+        Vertex far = center.distanceTo(a) > center.distanceTo(b) ? a : b; // its direction is the least affected by rounding
+        double angle = Math.atan2(far.y - center.y, far.x - center.x);
+        double tolerance = 2 * Vertex.EPSILON / nearest + 1e-9; // a vertex near the segment is at least nearest away from the center
+
+        List<Vertex> found = new ArrayList<>();
+        for (int k = -1; k <= 1; k++) { // the range may cross the direction of angle pi
+            double from = angle - tolerance + 2 * Math.PI * k, to = angle + tolerance + 2 * Math.PI * k;
+            if (to < -Math.PI || from > Math.PI) continue;
+            for (List<Vertex> same : byAngle.subMap(from, true, to, true).values()) {
+                found.addAll(same);
             }
         }
+        return found;
+    }
+}
 
-        int max_intersect = 0;
-        for (HalfEdge e : intersectionsOg) {
-            int intersections = 1;
-            HalfEdge start = e;
-            while (e.next != start) { // for each edge that intersects with the segment origin -> end check how many times the latter intersects with the edge's face
-                e = e.next;          
-                if (seg_intersect(origin, end, e.origin, e.next.origin) != null) {
-                    intersections++;
-                }
+// Finds, for many vertices v at once, where the line from the guard through v hits the walls of the polygon beyond v.
+// Each wall covers an interval of directions as seen from the guard; sweeping the directions in increasing order while keeping the walls whose
+// interval contains the current one, each ray is only tested against the walls it actually crosses: O(n log n + hits) instead of O(n) per ray
+class AngularSweep {
+    private final Vertex guard;
+    private final List<Vertex[]> walls = new ArrayList<>();
+    private final List<double[]> intervals = new ArrayList<>(); // {from, to, index in walls}, angles in radians
+    long intersections; // walls tested so far
+
+    public AngularSweep(Vertex guard, List<HalfEdge> externalEdges) {
+        this.guard = guard;
+        for (HalfEdge e : externalEdges) {
+            Vertex a = e.origin;
+            Vertex b = e.next.origin;
+            double dist = distanceToSegment(guard, a, b);
+            if (dist < Vertex.EPSILON) continue; // walls through the guard are only hit at the guard itself
+
+            double from = Math.atan2(a.y - guard.y, a.x - guard.x);
+            double to = Math.atan2(b.y - guard.y, b.x - guard.x);
+            if (from > to) {double aux = from; from = to; to = aux;}
+            if (to - from > Math.PI) { // crosses the direction of angle pi
+                double aux = from + 2 * Math.PI;
+                from = to;
+                to = aux;
             }
-            if (intersections > max_intersect) { // the face with most intersections contains part of origin -> end so we choose the corresponding edge to start
-                max_intersect = intersections; 
-                h = start;
+            double slack = 1e-9 + Vertex.EPSILON / dist; // intersections are rounded, so a wall may be hit slightly outside its interval
+
+            int w = walls.size();
+            walls.add(new Vertex[] {a, b});
+            for (int k = -1; k <= 1; k++) { // copies shifted by a full turn, so that all angles can be taken in [-pi, pi]
+                double f = from - slack + 2 * Math.PI * k;
+                double t = to + slack + 2 * Math.PI * k;
+                if (t >= -Math.PI - 1 && f <= Math.PI + 1) {
+                    intervals.add(new double[] {f, t, w});
+                }
             }
-            
         }
+        intervals.sort((i1, i2) -> Double.compare(i1[0], i2[0]));
+    }
 
-        h.incidentFace = h.next.incidentFace;
+    // For each vertex, the intersections of the line guard -> v with the walls that lie beyond v, sorted by decreasing distance to the guard
+    // (the order in which addRays adds the pieces of the ray)
+    public List<List<Vertex>> wallsBeyond(List<Vertex> vertices) {
+        List<List<Vertex[]>> candidates = candidates(vertices);
+        List<List<Vertex>> result = new ArrayList<>();
+        for (int i = 0; i < vertices.size(); i++) {
+            Vertex v = vertices.get(i);
+            List<Vertex> hits = new ArrayList<>();
+            result.add(hits);
+            for (Vertex[] wall : candidates.get(i)) {
+                Vertex hit = DCEL.intersect(guard, v, wall[0], wall[1], false);
+                intersections++;
+                if (hit == null || hit.near(v)) continue;
+                if ((guard.y > v.y && hit.y < v.y) || (guard.y < v.y && hit.y > v.y)) { //intersecao com uma parede
+                    hits.add(hit);
+                }
+                else if (guard.y == hit.y && ((guard.x > v.x && hit.x < v.x) || (guard.x < v.x && hit.x > v.x))) {
+                    hits.add(hit);
+                }
+            }
+            hits.sort(new VertexComparator(guard));
+        }
+        return result;
+    }
 
-        HalfEdge prev = h; //so we can add pointer later
+    // For each vertex, the walls whose interval of directions contains the direction of guard -> v (none for the guard itself): a superset
+    // of the walls the line through v hits
+    public List<List<Vertex[]>> candidates(List<Vertex> vertices) {
+        int n = vertices.size();
+        double[] angle = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            Vertex v = vertices.get(i);
+            angle[i] = Math.atan2(v.y - guard.y, v.x - guard.x);
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> Double.compare(angle[i1], angle[i2]));
+
+        List<List<Vertex[]>> result = new ArrayList<>(Collections.nCopies(n, null));
+        List<double[]> active = new ArrayList<>();
+        int next = 0;
+        for (int i : order) {
+            Vertex v = vertices.get(i);
+            List<Vertex[]> found = new ArrayList<>();
+            result.set(i, found);
+            if (v.near(guard)) continue;
+
+            while (next < intervals.size() && intervals.get(next)[0] <= angle[i]) {
+                active.add(intervals.get(next++));
+            }
+            active.removeIf(interval -> interval[1] < angle[i]);
 
-        if (h.origin.equals(origin)) {
-            f = new Face(h, faces.size());
-            h.incidentFace = f;
-            addFace(f);
-            prev = h.prev;
+            for (double[] interval : active) {
+                found.add(walls.get((int) interval[2]));
+            }
         }
-        
-        else if (h.next.origin.equals(origin)) {
-            h = h.next;
-            f = new Face(h, faces.size());
-            h.incidentFace = f;
-            addFace(f);
+        return result;
+    }
+
+    private static double distanceToSegment(Vertex p, Vertex a, Vertex b) {
+        double dx = b.x - a.x;
+        double dy = b.y - a.y;
+        double len = dx * dx + dy * dy;
+        double t = len == 0 ? 0 : Math.max(0, Math.min(1, ((p.x - a.x) * dx + (p.y - a.y) * dy) / len));
+        return p.distanceTo(new Vertex(a.x + t * dx, a.y + t * dy));
+    }
+}
+
+// A fraction in lowest terms with a positive denominator, so equal values have equal fields (and equals and hashCode are exact). The
+// numerator and the denominator are longs while they fit, and BigIntegers once an operation would overflow them, so nothing is ever rounded
+class Rational implements Comparable<Rational> {
+    static final Rational ONE = new Rational(1, 1);
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE), LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    private static final long SMALL = 1L << 31;
+
+    final long num, den; // when bigNum is null
+    private final BigInteger bigNum, bigDen; // only for fractions whose terms do not fit in longs, null otherwise
+
+    // Throws ArithmeticException for a zero denominator, and for the few fractions of longs whose terms only fit in BigIntegers (a
+    // Long.MIN_VALUE that would have to be negated)
+    public Rational(long num, long den) {
+        if (den == 0) throw new ArithmeticException("zero denominator");
+        if (den < 0) {
+            num = Math.negateExact(num);
+            den = Math.negateExact(den);
         }
+        long g = gcd(Math.absExact(num), den);
+        this.num = num / g;
+        this.den = den / g;
+        this.bigNum = null;
+        this.bigDen = null;
+    }
 
-        else {
-            HalfEdge nexth = new HalfEdge(origin);
-            nexth.next = h.next;
-            h.next.prev = nexth;
-            h.next = null; //set later
-            nexth.prev = null; //set later
+    private Rational(BigInteger bigNum, BigInteger bigDen) { // in lowest terms, with a positive denominator, and too large for longs
+        this.num = 0;
+        this.den = 0;
+        this.bigNum = bigNum;
+        this.bigDen = bigDen;
+    }
 
-            HalfEdge nexth_twin = new HalfEdge(h.twin.origin);
-            h.twin.origin = origin;
-            nexth_twin.prev = h.twin.prev;
-            h.twin.prev.next = nexth_twin;
-            nexth_twin.next = h.twin; 
-            h.twin.prev = nexth_twin; 
+    public static Rational of(long value) {
+        return value == Long.MIN_VALUE ? of(BigInteger.valueOf(value), BigInteger.ONE) : new Rational(value, 1);
+    }
 
-            f = new Face(nexth, faces.size());
-            nexth.incidentFace = f;
-            nexth_twin.incidentFace = h.twin.incidentFace;
-            nexth.twin = nexth_twin;
-            nexth_twin.twin = nexth;
+    // The exact value of the double (a finite one), whose denominator is a power of 2
+    public static Rational of(double value) {
+        double scaled = value; // value * 2^shift, exact
+        int shift = 0;
+        while (scaled != Math.rint(scaled) && shift < 62) {
+            scaled *= 2;
+            shift++;
+        }
+        if (scaled == Math.rint(scaled) && Math.abs(scaled) < 0x1p62) return new Rational((long) scaled, 1L << shift);
+        BigDecimal exact = new BigDecimal(value);
+        return exact.scale() > 0 ? of(exact.unscaledValue(), BigInteger.TEN.pow(exact.scale())) : of(exact.toBigIntegerExact(), BigInteger.ONE);
+    }
 
-            addEdge(nexth);
-            addEdge(nexth_twin);
-            addFace(f);
-            externalEdges.add(nexth);
+    private static Rational of(BigInteger num, BigInteger den) {
+        if (den.signum() < 0) {
+            num = num.negate();
+            den = den.negate();
+        }
+        BigInteger g = num.gcd(den);
+        if (g.signum() != 0 && !g.equals(BigInteger.ONE)) {
+            num = num.divide(g);
+            den = den.divide(g);
+        }
+        if (num.compareTo(LONG_MIN) > 0 && num.compareTo(LONG_MAX) <= 0 && den.compareTo(LONG_MAX) <= 0) return new Rational(num.longValue(), den.longValue());
+        return new Rational(num, den);
+    }
 
-            h = nexth;
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
         }
+        return a == 0 ? 1 : a;
+    }
 
-        Vertex intersection = origin;
-        HalfEdge next = h; //so we can add pointer later
-        h = h.next;           
-        
-        int passOg = 0;
+    private BigInteger bigNum() {
+        return bigNum != null ? bigNum : BigInteger.valueOf(num);
+    }
 
-        while (!intersection.equals(end)) {
-            Vertex i = seg_intersect(origin, end, h.origin, h.next.origin);
-            if (i != null) {
-                if (i.equals(origin)) {passOg ++;}
-                intersection = i;
-                if (!vertices.contains(i)) {addVertex(i);};
-                h.incidentFace = f;
-                HalfEdge newh = new HalfEdge(i);
-                HalfEdge newh_twin = new HalfEdge(next.origin);
+    private BigInteger bigDen() {
+        return bigDen != null ? bigDen : BigInteger.valueOf(den);
+    }
 
-                if (!i.equals(h.next.origin) &&  !i.equals(h.origin)) {
-                    HalfEdge nexth = new HalfEdge(i); //add halfedge above intersection point
-                    nexth.incidentFace = prev.incidentFace;
-                    nexth.incidentFace.outerComponent = nexth;
-                    nexth.next = h.next;
-                    h.next.prev = nexth;
+    // Fractions of terms below 2^31 in absolute value are added, multiplied and compared in longs without overflow; the others go on to
+    // BigIntegers (catching the ArithmeticException of Math.multiplyExact instead was several times slower when most of them overflow)
+    private boolean small() {
+        return bigNum == null && num > -SMALL && num < SMALL && den < SMALL;
+    }
 
-                    HalfEdge h_twin = new HalfEdge(i); //add twin halfedge to h (below intersection point)
-                    h_twin.next = h.twin.next;
-                    h.twin.next.prev = h_twin;
-                    h.twin.next = null; //to be set later
-                    h_twin.prev = null; //to be set later
-                    nexth.twin = h.twin;
-                    h.twin.twin = nexth;
-                    h.twin = h_twin;
-                    h_twin.twin = h;
-                    addEdge(nexth);
-                    addEdge(h_twin);
+    public Rational plus(Rational other) {
+        if (small() && other.small()) return new Rational(num * other.den + other.num * den, den * other.den);
+        return of(bigNum().multiply(other.bigDen()).add(other.bigNum().multiply(bigDen())), bigDen().multiply(other.bigDen()));
+    }
 
-                    newh.incidentFace = f;
-                    f.outerComponent = newh;
-                    h.next = newh;
-                    newh.prev = h;
-                    newh.next = next;
-                    next.prev = newh;
-                    
-                    newh_twin.incidentFace = prev.incidentFace;
-                    newh_twin.incidentFace.outerComponent = newh_twin;
-                    newh_twin.prev = prev;
-                    prev.next = newh_twin;
-                    newh_twin.next = nexth;
-                    nexth.prev = newh_twin;
-                    newh_twin.twin = newh;
-                    newh.twin = newh_twin;
+    public Rational minus(Rational other) {
+        if (small() && other.small()) return new Rational(num * other.den - other.num * den, den * other.den);
+        return of(bigNum().multiply(other.bigDen()).subtract(other.bigNum().multiply(bigDen())), bigDen().multiply(other.bigDen()));
+    }
 
-                    if (!intersection.equals(end)) { //check if next is outer face
-                        f = new Face(h_twin, faces.size());
-                        addFace(f);
-                    }
-                    else {
-                        f = nexth.twin.incidentFace;
-                        nexth.twin.next = h_twin; 
-                        h_twin.prev = nexth.twin;
-                        externalEdges.add(nexth);
-                    }
+    public Rational times(Rational other) {
+        if (small() && other.small()) return new Rational(num * other.num, den * other.den);
+        return of(bigNum().multiply(other.bigNum()), bigDen().multiply(other.bigDen()));
+    }
 
-                    addEdge(newh);
-                    addEdge(newh_twin);
-                    prev = nexth.twin;
-                    h = h_twin;
+    public Rational dividedBy(Rational other) {
+        if (other.signum() == 0) throw new ArithmeticException("division by zero");
+        if (small() && other.small()) return new Rational(num * other.den, den * other.num);
+        return of(bigNum().multiply(other.bigDen()), bigDen().multiply(other.bigNum()));
+    }
 
-                }
-                else {
-                    if (i.equals(h.origin)) {h = h.prev;}
+    public Rational half() {
+        return times(new Rational(1, 2));
+    }
 
-                    if (!i.equals(origin) || passOg == 0) {
-                        newh_twin.prev = prev;
-                        newh_twin.incidentFace = prev.incidentFace;
-                        newh_twin.incidentFace.outerComponent = newh_twin;
-                        prev.next = newh_twin;
-                        newh_twin.next = h.next;
-                        h.next.prev = newh_twin;
-                        newh_twin.twin = newh;
-                        newh.twin = newh_twin;
+    public int signum() {
+        return bigNum != null ? bigNum.signum() : Long.signum(num);
+    }
 
-                        newh.incidentFace = f;
-                        f.outerComponent = newh;
-                        h.next = newh;
-                        newh.prev = h;
-                        newh.next = next;
-                        next.prev = newh;
-                        addEdge(newh);
+    public int compareTo(long value) {
+        if (small() && value > -SMALL && value < SMALL) return Long.compare(num, value * den);
+        return compareTo(of(value));
+    }
+
+    @Override
+    public int compareTo(Rational other) {
+        if (small() && other.small()) return Long.compare(num * other.den, other.num * den);
+        return bigNum().multiply(other.bigDen()).compareTo(other.bigNum().multiply(bigDen()));
+    }
+
+    public double toDouble() {
+        if (bigNum == null) return (double) num / den;
+        return new BigDecimal(bigNum).divide(new BigDecimal(bigDen), MathContext.DECIMAL128).doubleValue();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Rational)) return false;
+        Rational other = (Rational) obj;
+        return bigNum == null ? other.bigNum == null && num == other.num && den == other.den : bigNum.equals(other.bigNum) && bigDen.equals(other.bigDen);
+    }
+
+    @Override
+    public int hashCode() {
+        return bigNum == null ? 31 * Long.hashCode(num) + Long.hashCode(den) : 31 * bigNum.hashCode() + bigDen.hashCode();
+    }
+}
+
+// Exact version of the rays of computeVisibility for orthogonal polygons. A ray guard -> v meets a wall at guard + t (v - guard), where
+// t = (wall - guard) / (v - guard) on the axis the wall is perpendicular to, so t and the point are fractions: they are sorted, compared with
+// the polygon and deduplicated exactly, instead of with rounded doubles and tolerances. The coordinates are taken on the grid of the polygon
+// (see Grid), where its vertices are integers even when the doubles are not exact multiples (0.3 * 7 = 2.1000000000000005): rays that go
+// through a vertex of such a polygon then go through it exactly, as on the polygons of GenPols, which are their own grid. The guard can be
+// anywhere; it is put on the grid as it is, without rounding
+class ExactRays {
+    // The grid of the polygon on one axis: coordinate = origin + an integer times unit, up to the error of doubles, with the largest unit
+    // that fits every vertex. Moving the origin and scaling each axis keep which walls a line meets and where along it, so the rays are the
+    // same on the grid. A polygon without such a grid (unit 0) has its coordinates taken exactly as the doubles they are
+    static class Grid {
+        final double origin, unit;
+        private final Rational exactOrigin, exactUnit;
+
+        Grid(List<Vertex> polygon, boolean xAxis) {
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (Vertex v : polygon) {
+                min = Math.min(min, xAxis ? v.x : v.y);
+                max = Math.max(max, xAxis ? v.x : v.y);
+            }
+            double tolerance = 1e-9 * Math.max(max - min, Math.max(Math.abs(min), Math.abs(max)));
+            double unit = 0;
+            for (Vertex v : polygon) {
+                unit = gcd(unit, (xAxis ? v.x : v.y) - min, tolerance);
+            }
+            boolean fits = unit > tolerance && (max - min) / unit < 1 << 30;
+            for (Vertex v : polygon) {
+                double q = ((xAxis ? v.x : v.y) - min) / unit;
+                fits = fits && Math.abs(q - Math.rint(q)) < 1e-6;
+            }
+            origin = fits ? min : 0;
+            this.unit = fits ? unit : 0;
+            exactOrigin = Rational.of(origin);
+            exactUnit = Rational.of(this.unit);
+        }
+
+        // Euclid's algorithm with remainders within tolerance of 0 or of b taken as 0
+        private static double gcd(double a, double b, double tolerance) {
+            while (b > tolerance) {
+                double r = a % b;
+                if (r <= tolerance || b - r <= tolerance) {r = 0;}
+                a = b;
+                b = r;
+            }
+            return a;
+        }
+
+        // The coordinate on the grid: an integer for those of the polygon (and for a guard within 1e-9 units of a grid line), otherwise the
+        // exact value of the double (c - origin) / unit
+        Rational of(double c) {
+            if (unit == 0) return Rational.of(c);
+            double q = (c - origin) / unit;
+            double r = Math.rint(q);
+            return Math.abs(q - r) < 1e-9 ? Rational.of((long) r) : Rational.of(q);
+        }
+
+        // The coordinate a point of the grid has in the polygon
+        double back(Rational q) {
+            return unit == 0 ? q.toDouble() : q.times(exactUnit).plus(exactOrigin).toDouble();
+        }
+    }
+
+    private final Grid gridX, gridY;
+    private final Rational gx, gy; // the guard, on the grid as every coordinate below
+    private final Rational[] wallX, wallY1, wallY2; // vertical walls of the polygon: x and the y of both ends, lowest first
+    private final Rational[] wallY, wallX1, wallX2; // horizontal walls: y and the x of both ends, lowest first
+    private int vertical, horizontal;
+    private Vertex last; // the vertex of the last ray, and v - guard for it
+    private Rational lastDx, lastDy;
+
+    // Whether the polygon is orthogonal
+    public static boolean supports(List<Vertex> polygon) {
+        for (int i = 0; i < polygon.size(); i++) {
+            Vertex a = polygon.get(i);
+            Vertex b = polygon.get((i + 1) % polygon.size());
+            if (a.x != b.x && a.y != b.y) return false;
+        }
+        return true;
+    }
+
+    public ExactRays(Vertex guard, List<Vertex> polygon) {
+        gridX = new Grid(polygon, true);
+        gridY = new Grid(polygon, false);
+        gx = gridX.of(guard.x);
+        gy = gridY.of(guard.y);
+        int n = polygon.size();
+        wallX = new Rational[n];
+        wallY1 = new Rational[n];
+        wallY2 = new Rational[n];
+        wallY = new Rational[n];
+        wallX1 = new Rational[n];
+        wallX2 = new Rational[n];
+        for (int i = 0; i < n; i++) {
+            Vertex a = polygon.get(i);
+            Vertex b = polygon.get((i + 1) % n);
+            if (a.x == b.x) {
+                wallX[vertical] = gridX.of(a.x);
+                wallY1[vertical] = gridY.of(Math.min(a.y, b.y));
+                wallY2[vertical++] = gridY.of(Math.max(a.y, b.y));
+            }
+            else {
+                wallY[horizontal] = gridY.of(a.y);
+                wallX1[horizontal] = gridX.of(Math.min(a.x, b.x));
+                wallX2[horizontal++] = gridX.of(Math.max(a.x, b.x));
+            }
+        }
+    }
+
+    // The distinct values of t > 1 at which the line guard -> v meets the given walls (pieces of the polygon edges, axis-parallel), in
+    // decreasing order and followed by 1 (v itself)
+    public List<Rational> beyond(Vertex v, List<Vertex[]> walls) {
+        direction(v);
+        Rational dx = lastDx, dy = lastDy;
+        TreeSet<Rational> hits = new TreeSet<>(Collections.reverseOrder());
+        for (Vertex[] wall : walls) {
+            Rational t;
+            if (wall[0].x == wall[1].x) {
+                if (dx.signum() == 0) continue; // parallel
+                t = gridX.of(wall[0].x).minus(gx).dividedBy(dx);
+                Rational y = t.times(dy).plus(gy);
+                if (y.compareTo(gridY.of(Math.min(wall[0].y, wall[1].y))) < 0 || y.compareTo(gridY.of(Math.max(wall[0].y, wall[1].y))) > 0) continue;
+            }
+            else {
+                if (dy.signum() == 0) continue;
+                t = gridY.of(wall[0].y).minus(gy).dividedBy(dy);
+                Rational x = t.times(dx).plus(gx);
+                if (x.compareTo(gridX.of(Math.min(wall[0].x, wall[1].x))) < 0 || x.compareTo(gridX.of(Math.max(wall[0].x, wall[1].x))) > 0) continue;
+            }
+            if (t.compareTo(Rational.ONE) > 0) {
+                hits.add(t);
+            }
+        }
+        List<Rational> beyond = new ArrayList<>(hits);
+        beyond.add(Rational.ONE);
+        return beyond;
+    }
+
+    // The exact point guard + t (v - guard) on the grid, as the list {x, y} (usable as a key)
+    public List<Rational> point(Vertex v, Rational t) {
+        direction(v);
+        return Arrays.asList(t.times(lastDx).plus(gx), t.times(lastDy).plus(gy));
+    }
+
+    private void direction(Vertex v) { // every ray is asked for several times in a row
+        if (v == last) return;
+        last = v;
+        lastDx = gridX.of(v.x).minus(gx);
+        lastDy = gridY.of(v.y).minus(gy);
+    }
+
+    // The point guard + t (v - guard) rounded as DCEL.intersect rounds its intersections
+    public Vertex vertex(Vertex v, Rational t) {
+        List<Rational> p = point(v, t);
+        return new Vertex(DCEL.round(gridX.back(p.get(0))), DCEL.round(gridY.back(p.get(1))));
+    }
+
+    // Whether the segment of guard -> v between t1 and t2 (two consecutive hits) is inside the polygon: its midpoint is tested with a ray
+    // to the right, counting the vertical walls it crosses with their lower end included and their upper end excluded, and a midpoint on the
+    // boundary means the segment is on it
+    public boolean inside(Vertex v, Rational t1, Rational t2) {
+        List<Rational> m = point(v, t1.plus(t2).half());
+        Rational mx = m.get(0);
+        Rational my = m.get(1);
+        boolean in = false;
+        for (int i = 0; i < vertical; i++) {
+            int side = mx.compareTo(wallX[i]);
+            if (side > 0 || my.compareTo(wallY1[i]) < 0 || my.compareTo(wallY2[i]) > 0) continue;
+            if (side == 0) return false; // on the wall
+            if (my.compareTo(wallY2[i]) < 0) {in = !in;}
+        }
+        for (int i = 0; i < horizontal; i++) {
+            if (my.compareTo(wallY[i]) == 0 && mx.compareTo(wallX1[i]) >= 0 && mx.compareTo(wallX2[i]) <= 0) return false;
+        }
+        return in;
+    }
+}
+
+class VertexComparator implements Comparator<Vertex> {
+    private Vertex guard;
+
+    public VertexComparator(Vertex guard) {
+        this.guard = guard;
+    }
+
+    @Override
+    public int compare(Vertex v1, Vertex v2) { // squared distances give the same order without a square root per comparison
+        double dist1 = (v1.x - guard.x) * (v1.x - guard.x) + (v1.y - guard.y) * (v1.y - guard.y);
+        double dist2 = (v2.x - guard.x) * (v2.x - guard.x) + (v2.y - guard.y) * (v2.y - guard.y);
+
+        return Double.compare(dist2, dist1);
+    }
+}
+
+class HalfEdge {
+    int id; // order in which the half-edge was added to the DCEL
+    Vertex origin;
+    HalfEdge twin;
+    Face incidentFace;
+    HalfEdge next;
+    HalfEdge prev;
+
+    public HalfEdge(Vertex origin) {
+        this.origin = origin;
+    }
+}
+
+class Face implements Comparable<Face> {
+    int id; // position of the face in the DCEL's list
+    HalfEdge outerComponent; // reference to one of the half-edges that bound the face
+    Vertex centroid;
+    int counter;
+    int modem;
+
+    public Face(HalfEdge outerComponent, int counter) {
+        this.outerComponent = outerComponent;
+        this.counter = counter;
+    }
+
+    public void computeCentroid() { // computes the center of the face
+        HalfEdge startEdge = outerComponent;
+        HalfEdge e = startEdge;
+        double x = e.origin.x;
+        double y = e.origin.y;
+        int count = 1;
+
+        while (!e.next.equals(startEdge)) {
+            e = e.next;
+            x += e.origin.x;
+            y += e.origin.y;
+            count++;
+        }
+
+        x /= count;
+        y /= count;
+
+        Vertex c = new Vertex(x, y);
+        centroid = c;
+    }
+
+    @Override
+    public int compareTo(Face other) {
+        if (this.centroid.y != other.centroid.y) {
+            return Double.compare(other.centroid.y, this.centroid.y);
+        } else {
+            return Double.compare(other.centroid.x, this.centroid.x);
+        }
+    }
+}
+
+
+class DCEL {
+    List<Vertex> vertices;
+    List<Vertex> externalVertices;
+    List<HalfEdge> halfEdges;
+    List<HalfEdge> externalEdges;
+    List<Face> faces;
+    VertexIndex vertexIndex; // same vertices as the list, for constant time lookups
+    VertexIndex externalVertexIndex;
+    EdgeIndex externalEdgeIndex; // same edges as externalEdges, for ray and segment queries
+    private EdgeIndex walls; // while computeVisibility(guards) runs, the walls segInPoly and countWalls test instead of externalEdgeIndex
+    VertexIndex origins; // origins of the half-edges
+    List<List<HalfEdge>> outgoing; // for each vertex in origins, the half-edges that start at it
+    int edgeCount;
+    boolean verbose = true; // print the regions found by mergeFaces
+    boolean exact; // find the partitions of computeVisibility with ExactRays (the polygon must be one ExactRays supports); guards that are not vertices use them anyway when the polygon allows it
+    Metrics metrics = new Metrics();
+
+    public DCEL() {
+        vertices = new ArrayList<>();
+        externalVertices = new ArrayList<>();
+        halfEdges = new ArrayList<>();
+        externalEdges = new ArrayList<>();
+        faces = new ArrayList<>();
+        vertexIndex = new VertexIndex();
+        externalVertexIndex = new VertexIndex();
+        externalEdgeIndex = new EdgeIndex(externalEdges);
+        origins = new VertexIndex();
+        outgoing = new ArrayList<>();
+    }
+
+    // Method to add a new vertex to the DCEL
+    public void addVertex(Vertex v) {
+        vertices.add(v);
+        vertexIndex.add(v);
+    }
+
+    // Method to add a new vertex of the polygon to the DCEL
+    public void addExternalVertex(Vertex v) {
+        externalVertices.add(v);
+        externalVertexIndex.add(v);
+    }
+
+    public boolean containsVertex(Vertex v) {
+        return vertexIndex.indexOf(v) >= 0;
+    }
+
+    // Method to add a new edge to the DCEL
+    public void addEdge(HalfEdge e) {
+        metrics.halfEdgesCreated++;
+        e.id = edgeCount++;
+        halfEdges.add(e);
+        outgoingOf(e.origin).add(e);
+    }
+
+    private List<HalfEdge> outgoingOf(Vertex v) {
+        int id = origins.findOrAdd(v);
+        if (id == outgoing.size()) {outgoing.add(new ArrayList<>());}
+        return outgoing.get(id);
+    }
+
+    private void moveOrigin(HalfEdge e, Vertex v) {
+        outgoingOf(e.origin).remove(e);
+        e.origin = v;
+        outgoingOf(v).add(e);
+    }
+
+    public boolean containsEdge(Vertex a, Vertex b) {
+        int id = origins.indexOf(a);
+        if (id < 0) return false;
+        for (HalfEdge e : outgoing.get(id)) {
+            if (e.next.origin.near(b)) return true;
+        }
+        return false;
+    }
+
+    // Half-edges that the segment origin -> end touches at origin, in the order they were added: the ones that start or end at origin if it
+    // is already a vertex, otherwise the ones that contain it (found among the polygon edges, as partitions only start inside walls)
+    private List<HalfEdge> edgesAt(Vertex origin) {
+        List<HalfEdge> around = new ArrayList<>();
+        int id = origins.indexOf(origin);
+        if (id >= 0) {
+            for (HalfEdge e : outgoing.get(id)) {
+                around.add(e);
+                around.add(e.twin);
+            }
+        }
+        else {
+            for (HalfEdge e : externalEdgeIndex.pointCandidates(origin)) {
+                around.add(e);
+                around.add(e.twin);
+            }
+        }
+        if (around.isEmpty()) { // not on the boundary
+            around = halfEdges;
+        }
+        else {
+            around.sort((e1, e2) -> Integer.compare(e1.id, e2.id));
+        }
+        return around;
+    }
+
+    // Method to add a new external edge to the DCEL
+    public void addExternalEdge(HalfEdge e) {
+        externalEdges.add(e);
+    }
+
+    // Method to add a new face to the DCEL
+    public void addFace(Face f) {
+        metrics.facesCreated++;
+        f.id = faces.size();
+        faces.add(f);
+    }
+
+    // Method to create a DCEL from an array of vertices representing a polygon in counter-clockwise order
+    public void createDCELFromPolygon(Vertex[] polygonVertices) {
+        int n = polygonVertices.length;
+        HalfEdge[] edges = new HalfEdge[n];
+        Face face = new Face(null, 1);
+        Face outerFace = new Face (null, 0);
+        
+
+        // Create half-edges and vertices
+        for (int i = 0; i < n; i++) {
+            Vertex v = polygonVertices[i];
+            Vertex nextVertex = polygonVertices[(i + 1) % n];
+            HalfEdge edge = new HalfEdge(v);
+            HalfEdge twinEdge = new HalfEdge(nextVertex);
+            edge.twin = twinEdge;
+            twinEdge.twin = edge;
+            edge.incidentFace = face;
+            twinEdge.incidentFace = outerFace;
+            edges[i] = edge;
+            addVertex(v);
+            addExternalVertex(v);
+            addEdge(edge);
+            addEdge(twinEdge);
+            addExternalEdge(edge);
+        }
+
+        // Linking next and previous half-edges
+        for (int i = 0; i < n; i++) {
+            edges[i].next = edges[(i + 1) % n];
+            edges[(i + 1) % n].prev = edges[i];
+            edges[i].twin.prev = edges[(i + 1) % n].twin;
+            edges[(i + 1) % n].twin.next = edges[i].twin;
+        }
+
+        // Set outer component for the face
+        face.outerComponent = edges[0];
+        outerFace.outerComponent = edges[0].twin;
+
+        addFace(face);
+        addFace(outerFace);
+    }
+
+    public void addPartition(Vertex origin, Vertex end) {
+        if (!containsVertex(origin)) {
+            addVertex(origin);
+        }
+
+        HalfEdge h = null;
+        Face f = null;
+
+        HalfEdge stop = null;
+        List<HalfEdge> intersectionsOg = new ArrayList<>();
+
+        for (HalfEdge e : edgesAt(origin)) {
+            if (e.incidentFace.counter == 0) continue; //discard HalfEdges incident to external face
+            Vertex i = seg_intersect(origin, end, e.origin, e.next.origin);
+            if (i != null && i.near(origin)) {
+                intersectionsOg.add(e); // obtain all edges that intersect with the new edge
+            }
+        }
+
+        int max_intersect = 0;
+        for (HalfEdge e : intersectionsOg) {
+            int intersections = 1;
+            HalfEdge start = e;
+            while (e.next != start) { // for each edge that intersects with the segment origin -> end check how many times the latter intersects with the edge's face
+                e = e.next;          
+                if (seg_intersect(origin, end, e.origin, e.next.origin) != null) {
+                    intersections++;
+                }
+            }
+            if (intersections > max_intersect) { // the face with most intersections contains part of origin -> end so we choose the corresponding edge to start
+                max_intersect = intersections; 
+                h = start;
+            }
+            
+        }
+
+        h.incidentFace = h.next.incidentFace;
+
+        HalfEdge prev = h; //so we can add pointer later
+
+        if (h.origin.near(origin)) {
+            f = new Face(h, faces.size());
+            h.incidentFace = f;
+            addFace(f);
+            prev = h.prev;
+        }
+        
+        else if (h.next.origin.near(origin)) {
+            h = h.next;
+            f = new Face(h, faces.size());
+            h.incidentFace = f;
+            addFace(f);
+        }
+
+        else {
+            HalfEdge nexth = new HalfEdge(origin);
+            nexth.next = h.next;
+            h.next.prev = nexth;
+            h.next = null; //set later
+            nexth.prev = null; //set later
+
+            HalfEdge nexth_twin = new HalfEdge(h.twin.origin);
+            moveOrigin(h.twin, origin);
+            nexth_twin.prev = h.twin.prev;
+            h.twin.prev.next = nexth_twin;
+            nexth_twin.next = h.twin; 
+            h.twin.prev = nexth_twin; 
+
+            f = new Face(nexth, faces.size());
+            nexth.incidentFace = f;
+            nexth_twin.incidentFace = h.twin.incidentFace;
+            nexth.twin = nexth_twin;
+            nexth_twin.twin = nexth;
+
+            addEdge(nexth);
+            addEdge(nexth_twin);
+            addFace(f);
+            addExternalEdge(nexth);
+
+            h = nexth;
+        }
+
+        Vertex intersection = origin;
+        HalfEdge next = h; //so we can add pointer later
+        h = h.next;           
+        
+        int passOg = 0;
+        // Steps since the walk last got further along origin -> end than before. A walk that stops getting further (it goes round a face, or
+        // back and forth between two points) for more steps than twice the half-edges there were has missed the end
+        int steps = 0, limit = 2 * halfEdges.size();
+        double farthest = 0;
+
+        while (!intersection.near(end)) {
+            if (++steps > limit) { // rounding made the segment miss the edges of the face it is in, or the segment leaves the polygon
+                throw new IllegalStateException("addPartition from (" + origin.x + "," + origin.y + ") to (" + end.x + "," + end.y + ") goes round a face without reaching the end");
+            }
+            Vertex i = seg_intersect(origin, end, h.origin, h.next.origin);
+            if (i != null) {
+                if (i.near(origin)) {passOg ++;}
+                double along = (i.x - origin.x) * (end.x - origin.x) + (i.y - origin.y) * (end.y - origin.y);
+                if (along > farthest) {
+                    farthest = along;
+                    steps = 0;
+                }
+                intersection = i;
+                if (!containsVertex(i)) {addVertex(i);};
+                h.incidentFace = f;
+                HalfEdge newh = new HalfEdge(i);
+                HalfEdge newh_twin = new HalfEdge(next.origin);
+
+                if (!i.near(h.next.origin) &&  !i.near(h.origin)) {
+                    HalfEdge nexth = new HalfEdge(i); //add halfedge above intersection point
+                    nexth.incidentFace = prev.incidentFace;
+                    nexth.incidentFace.outerComponent = nexth;
+                    nexth.next = h.next;
+                    h.next.prev = nexth;
+
+                    HalfEdge h_twin = new HalfEdge(i); //add twin halfedge to h (below intersection point)
+                    h_twin.next = h.twin.next;
+                    h.twin.next.prev = h_twin;
+                    h.twin.next = null; //to be set later
+                    h_twin.prev = null; //to be set later
+                    nexth.twin = h.twin;
+                    h.twin.twin = nexth;
+                    h.twin = h_twin;
+                    h_twin.twin = h;
+                    addEdge(nexth);
+                    addEdge(h_twin);
+
+                    newh.incidentFace = f;
+                    f.outerComponent = newh;
+                    h.next = newh;
+                    newh.prev = h;
+                    newh.next = next;
+                    next.prev = newh;
+                    
+                    newh_twin.incidentFace = prev.incidentFace;
+                    newh_twin.incidentFace.outerComponent = newh_twin;
+                    newh_twin.prev = prev;
+                    prev.next = newh_twin;
+                    newh_twin.next = nexth;
+                    nexth.prev = newh_twin;
+                    newh_twin.twin = newh;
+                    newh.twin = newh_twin;
+
+                    if (!intersection.near(end)) { //check if next is outer face
+                        f = new Face(h_twin, faces.size());
+                        addFace(f);
+                    }
+                    else {
+                        f = nexth.twin.incidentFace;
+                        nexth.twin.next = h_twin; 
+                        h_twin.prev = nexth.twin;
+                        addExternalEdge(nexth);
+                    }
+
+                    addEdge(newh);
+                    addEdge(newh_twin);
+                    prev = nexth.twin;
+                    h = h_twin;
+
+                }
+                else {
+                    if (i.near(h.origin)) {h = h.prev;}
+
+                    if (!i.near(origin) || passOg == 0) {
+                        newh_twin.prev = prev;
+                        newh_twin.incidentFace = prev.incidentFace;
+                        newh_twin.incidentFace.outerComponent = newh_twin;
+                        prev.next = newh_twin;
+                        newh_twin.next = h.next;
+                        h.next.prev = newh_twin;
+                        newh_twin.twin = newh;
+                        newh.twin = newh_twin;
+
+                        newh.incidentFace = f;
+                        f.outerComponent = newh;
+                        h.next = newh;
+                        newh.prev = h;
+                        newh.next = next;
+                        next.prev = newh;
+                        addEdge(newh);
                         addEdge(newh_twin);
                     }
 
-                    h = h.twin.prev.twin; 
+                    h = h.twin.prev.twin; 
+
+                    if (!i.near(end) && !i.near(origin)) {
+                        f = new Face(h, faces.size());
+                        addFace(f);
+                    }
+                    else {
+                        f = h.incidentFace;
+                    }
+                    prev = h.prev;
+                }
+
+                next = h;
+            }
+
+            h.incidentFace = f;
+            h = h.next;
+        }
+    }
+
+    public void computeVisibility(Vertex guard) {
+        addRays(guard, new AngularSweep(guard, externalEdges), false);
+        countCrossings(guard);
+    }
+
+    // Visibility from several guards at once. The rays of every guard partition the polygon, so each face is inside one face of what each
+    // guard alone would give (a common refinement), and gets in modem the fewest walls between it and any guard. Returns, per face id, the
+    // index of that guard (the first one on ties, -1 for the outer face)
+    public int[] computeVisibility(List<Vertex> guards) {
+        // The sweeps and the walls are taken before any ray splits the walls: the rays of every guard split them, so the walls a segment
+        // has to be tested against would grow with the number of guards
+        List<AngularSweep> sweeps = new ArrayList<>();
+        for (Vertex guard : guards) {
+            sweeps.add(new AngularSweep(guard, externalEdges));
+        }
+        List<HalfEdge> unsplit = new ArrayList<>(); // EdgeIndex only needs the endpoints of each edge
+        for (HalfEdge e : externalEdges) {
+            HalfEdge h = new HalfEdge(e.origin);
+            h.next = new HalfEdge(e.next.origin);
+            unsplit.add(h);
+        }
+        walls = new EdgeIndex(unsplit);
+
+        try {
+            for (int g = 0; g < guards.size(); g++) {
+                Vertex guard = guards.get(g);
+                if (guards.subList(0, g).stream().anyMatch(guard::near)) continue; // same rays as before
+                addRays(guard, sweeps.get(g), g > 0);
+            }
+
+            int[] server = new int[faces.size()];
+            int[] depth = new int[faces.size()];
+            Arrays.fill(server, -1);
+            for (int g = 0; g < guards.size(); g++) {
+                countCrossings(guards.get(g));
+                for (Face f : faces) {
+                    if (f.counter != 0 && (server[f.id] < 0 || f.modem < depth[f.id])) {
+                        server[f.id] = g;
+                        depth[f.id] = f.modem;
+                    }
+                }
+            }
+            for (Face f : faces) {
+                if (f.counter != 0) {f.modem = depth[f.id];}
+            }
+            return server;
+        } finally {
+            walls = null;
+        }
+    }
+
+    // Rays from the guard through every vertex of the polygon, added as partitions up to the walls they reach, which the sweep (around this
+    // guard) finds. With overlay, the DCEL already has the rays of other guards, which may run along these
+    private void addRays(Vertex guard, AngularSweep sweep, boolean overlay) {
+        metrics.begin(Metrics.Phase.RAYS);
+
+        Set<Long> partitions = new HashSet<>(); // pairs of ids (in partitionEnds) of the endpoints of the partitions already added
+        VertexIndex partitionEnds = new VertexIndex();
+
+        // the walls hit by every ray guard -> v beyond v, all found in one angular sweep around the guard
+        // Guards that are not vertices of the polygon always use ExactRays when the polygon allows it: their rays can cut a corner of the
+        // polygon so close to its vertex that segInPoly, which tests a point 0.00382 away from the middle of each piece, gets the piece wrong
+        boolean interior = externalVertexIndex.indexOf(guard) < 0;
+        boolean exact = (this.exact || interior) && ExactRays.supports(externalVertices);
+        ExactRays exactRays = exact ? new ExactRays(guard, externalVertices) : null;
+        List<List<Vertex[]>> candidates = exact ? sweep.candidates(externalVertices) : null;
+        List<List<Vertex>> wallsBeyond = exact ? null : sweep.wallsBeyond(externalVertices);
+        metrics.lineIntersects += sweep.intersections;
+        Map<List<Rational>, Integer> exactEnds = new HashMap<>(); // same as partitionEnds for the exact points
+        DirectionIndex onRays = overlay ? new DirectionIndex(guard, vertices) : null; // the vertices addPartitionOver may have to cut at
+
+        for (int vi = 0; vi < externalVertices.size(); vi++) {
+            Vertex v = externalVertices.get(vi);
+
+            List<Vertex> intersections = new ArrayList<>();
+            List<Rational> params = null; // with exactRays, the t of each intersection on guard -> v
+            if (exact) {
+                params = v.near(guard) ? new ArrayList<>() : exactRays.beyond(v, candidates.get(vi));
+                metrics.lineIntersects += candidates.get(vi).size();
+                for (Rational t : params) {
+                    intersections.add(exactRays.vertex(v, t)); // already sorted and without repetitions
+                }
+            }
+            else {
+                if (!v.near(guard)) { // the sweep gives the hits by decreasing distance to the guard, and all of them are beyond v
+                    intersections.addAll(wallsBeyond.get(vi));
+                    intersections.add(v);
+                }
+
+                if (intersections.size() > 1 && intersections.get(0).x == intersections.get(1).x && intersections.get(0).y == intersections.get(1).y) {
+                    intersections.remove(0); // remove repetitions caused by begining at a vertex of the polygon
+                }
+            }
+
+            for (int i=0; i<intersections.size()-1; i++) {
+                Vertex i1 = intersections.get(i);
+                Vertex i2 = intersections.get(i+1);
+                int id1, id2;
+                if (exact) {
+                    id1 = exactEnds.computeIfAbsent(exactRays.point(v, params.get(i)), p -> exactEnds.size());
+                    id2 = exactEnds.computeIfAbsent(exactRays.point(v, params.get(i+1)), p -> exactEnds.size());
+                }
+                else {
+                    id1 = partitionEnds.findOrAdd(i1);
+                    id2 = partitionEnds.findOrAdd(i2);
+                }
+                long pair = ((long) Math.min(id1, id2) << 32) | Math.max(id1, id2);
+                boolean edgeExists = partitions.contains(pair); //check if partition was already added
+
+                if (v.x == guard.x || v.y == guard.y) { // vertical or horizontal partitions
+                    if (i1.near(v) || i2.near(v)) {
+                        edgeExists = true;
+                            break;
+                    }
+
+                    if (containsEdge(i2, i1)) { //check if edge already exists
+                        edgeExists = true;
+                    }
+
+                    if (externalVertexIndex.indexOf(i2) >= 0 || externalVertexIndex.indexOf(i1) >= 0) {
+                        edgeExists = true;
+                    }
+                }
+
+
+                boolean edgeInPoly = exact ? exactRays.inside(v, params.get(i+1), params.get(i)) : segInPoly(i2, i1);
+
+                if (!i1.near(i2) && !edgeExists && edgeInPoly) {
+                    if (overlay) {addPartitionOver(i2, i1, onRays);} else {addPartition(i2, i1);}
+                    partitions.add(pair);
+                }
+            }
+        }
+        
+
+        metrics.end(Metrics.Phase.RAYS);
+    }
+
+    // addPartition for a segment that may run along edges already in the DCEL, which addPartition cannot follow: the segment is cut at the
+    // vertices on it, and each piece is added unless an edge already goes from its start towards its end (there is no vertex inside a
+    // piece, so such an edge covers all of it). The segment is on a ray of the guard of onRays, which gives the vertices that may be on it
+    private void addPartitionOver(Vertex origin, Vertex end, DirectionIndex onRays) {
+        List<Vertex> cuts = new ArrayList<>();
+        double dx = end.x - origin.x, dy = end.y - origin.y;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        for (Vertex v : onRays.near(origin, end)) {
+            double t = ((v.x - origin.x) * dx + (v.y - origin.y) * dy) / (length * length);
+            double offset = Math.abs((v.x - origin.x) * dy - (v.y - origin.y) * dx) / length;
+            if (t > 0 && t < 1 && offset < Vertex.EPSILON && !v.near(origin) && !v.near(end)) {cuts.add(v);}
+        }
+        cuts.sort(Comparator.comparingDouble(v -> (v.x - origin.x) * dx + (v.y - origin.y) * dy));
+        cuts.add(0, origin);
+        cuts.add(end);
+
+        for (int i = 0; i < cuts.size() - 1; i++) {
+            Vertex a = cuts.get(i), b = cuts.get(i + 1);
+            if (!a.near(b) && !edgeTowards(a, b)) {addPartition(a, b);}
+        }
+    }
+
+    // Whether a half-edge starts at a and goes in the direction of b
+    private boolean edgeTowards(Vertex a, Vertex b) {
+        int id = origins.indexOf(a);
+        if (id < 0) return false;
+        for (HalfEdge e : outgoing.get(id)) {
+            Vertex c = e.next.origin;
+            double cross = (c.x - a.x) * (b.y - a.y) - (c.y - a.y) * (b.x - a.x);
+            double dot = (c.x - a.x) * (b.x - a.x) + (c.y - a.y) * (b.y - a.y);
+            if (dot > 0 && Math.abs(cross) < Vertex.EPSILON * a.distanceTo(c) * a.distanceTo(b)) return true;
+        }
+        return false;
+    }
+
+    // Sets modem, in every face, to the number of walls between the guard and its centroid
+    private void countCrossings(Vertex guard) {
+        metrics.begin(Metrics.Phase.CROSSINGS);
+
+        // Faces that share an edge which is not on a line through the guard see it through the same walls (only rays from the guard separate
+        // faces with different counts), so the segment to the centroid is only tested against the walls once for each group of such faces
+        // Neighbours are found through the face cycles rather than incidentFace, which addPartition does not always leave up to date
+        IdentityHashMap<HalfEdge, Face> cycleOf = new IdentityHashMap<>();
+        for (Face f : faces) {
+            HalfEdge e = f.outerComponent;
+            do {
+                cycleOf.put(e, f);
+                e = e.next;
+            } while (e != f.outerComponent);
+        }
+
+        Set<Face> counted = new HashSet<>();
+        ArrayDeque<Face> queue = new ArrayDeque<>();
+        for (Face f : faces) {
+            if (f.counter == 0) {
+                f.modem = 10000000;
+                continue;
+            }
+            f.computeCentroid(); //calcular direito centroid
+            if (!counted.add(f)) continue;
+
+            f.modem = countWalls(guard, f.centroid);
+            queue.add(f);
+            while (!queue.isEmpty()) {
+                Face g = queue.poll();
+                HalfEdge e = g.outerComponent;
+                do {
+                    Face neighbour = cycleOf.get(e.twin);
+                    if (neighbour != null && neighbour.counter != 0 && !counted.contains(neighbour) && !onLineThrough(guard, e.origin, e.next.origin)) {
+                        neighbour.modem = g.modem;
+                        counted.add(neighbour);
+                        queue.add(neighbour);
+                    }
+                    e = e.next;
+                } while (e != g.outerComponent);
+            }
+        }
+
+        metrics.end(Metrics.Phase.CROSSINGS);
+    }
+
+    // Number of walls crossed by the segment guard -> c (rounded up to an even number, a wall is always entered and left)
+    public int countWalls(Vertex guard, Vertex c) {
+        List<Vertex> intersections = new ArrayList<>();
+        for (HalfEdge e : (walls != null ? walls : externalEdgeIndex).segmentCandidates(guard, c)) {
+            Vertex i = seg_intersect(guard, c, e.origin, e.next.origin);
+            if (i  != null && !i.near(guard) && !i.near(c)  && intersections.stream().noneMatch(i::near)) {
+                intersections.add(i);
+            }
+        }
+
+        int walls = intersections.size();
+        if (walls%2!=0) {walls++;}
+        return walls;
+    }
+
+    // Whether the segment a -> b is (almost) on a line through p, i.e. the end nearer to p is within 1e-3 of the line through p and the other
+    // end (rather than p within 1e-3 of the line through a and b, which rounding breaks on very short pieces of a ray). Generous on purpose:
+    // a false positive only costs an extra countWalls
+    private static boolean onLineThrough(Vertex p, Vertex a, Vertex b) {
+        double cross = (a.x - p.x) * (b.y - p.y) - (a.y - p.y) * (b.x - p.x);
+        return Math.abs(cross) <= 1e-3 * Math.max(p.distanceTo(a), p.distanceTo(b));
+    }
+
+    public void mergeFaces(int k, Vertex guard, Writer myWriter) throws IOException {
+        List<List<Vertex>> regions = mergeRegions(k);
+
+        metrics.begin(Metrics.Phase.OUTPUT);
+        writeRegions(regions, myWriter);
+        metrics.end(Metrics.Phase.OUTPUT);
+    }
+
+    private void writeRegions(List<List<Vertex>> regions, Writer myWriter) throws IOException {
+        if (regions.size() == 0) {
+            if (verbose) {System.out.println("No regions have this visibility");}
+            myWriter.write("0\n");
+            return;
+        }
+
+        myWriter.write(regions.size() + "\n");
+        for (int region = 0; region < regions.size(); region++) {
+            List<Vertex> visRegion = regions.get(region);
+            if (verbose) {System.out.println("\nRegion " + (region + 1) + ": ");}
+            myWriter.write(visRegion.size() + "\n");
+            for (Vertex v : visRegion) {
+                if (verbose) {System.out.println("(" + v.x + "," + v.y + ") ");}
+                writeVertex(myWriter, v);
+            }
+        }
+    }
+
+    // Writes "x y" on a line of its own, without building the line as an intermediate string
+    public static void writeVertex(Writer myWriter, Vertex v) throws IOException {
+        myWriter.write(Double.toString(v.x));
+        myWriter.write(' ');
+        myWriter.write(Double.toString(v.y));
+        myWriter.write('\n');
+    }
+
+    // Merges the faces with visibility <= k and returns the illuminated regions, each one in ccw order starting from its highest leftmost vertex.
+    // The faces merged into a region are joined in a disjoint-set over their ids and the common edges are only marked during the merge,
+    // so every face and half-edge is handled a constant number of times instead of being searched for in the lists
+    public List<List<Vertex>> mergeRegions(int k) {
+        metrics.begin(Metrics.Phase.MERGE);
+        List<Face> modemFaces = new ArrayList<>();
+        List<List<Vertex>> regions = new ArrayList<>();
+        int[] parent = new int[faces.size()];
+        boolean[] removed = new boolean[edgeCount];
+
+        for (Face f : faces) {
+            parent[f.id] = f.id;
+            if (f.modem <= k) {
+               modemFaces.add(f); // faces com o modem pedido
+            }
+        }
+
+        Collections.sort(modemFaces); // começar da face mais a cima (ou mais à direita em caso de empate) para garantir que tenho pelo menos 1 fronteira com uma face de modem > k
+        boolean[] merged = new boolean[faces.size()]; // per disjoint-set root, whether its faces were already merged into a region
+
+        for (Face startF : modemFaces) {
+            if (merged[find(parent, startF.id)]) continue;
+
+            HalfEdge startE = startF.outerComponent;
+            HalfEdge edge = startE.next;
+            boolean isBarrier = false;
+            if (startE.twin.incidentFace.modem > k) {
+                isBarrier = true;
+            }
+
+            while (isBarrier == false && edge != startE) {
+                if (edge.incidentFace != startF) break;
+                if (edge.twin.incidentFace.modem > k) { // encontrar uma tal fronteira para iniciar o algoritmo
+                    isBarrier = true;
+                    startE = edge;
+                    break;
+                }
+                edge = edge.next;
+            }
+
+
+            if (isBarrier == false) {
+                continue; // se todos os edges forem adjacentes a uma face de modem <= k, descartar (já contabilizado)
+            }
+            merged[startF.id] = true; // startF is still the root of its set, as every face merged so far went to an earlier region
+
+            HalfEdge e = startE.next;
+
+            while (e != startE) {
+                if (e.twin.incidentFace.modem <= k) {
+                    union(parent, startF.id, e.twin.incidentFace.id);
+                    e.prev.next = e.twin.next; // alterar apontadores de uma face para a outra (dar merge)
+                    e.prev.incidentFace = startF;
+                    e.twin.next.prev = e.prev;
+                    e.twin.next.incidentFace = startF;
+                    e.next.prev = e.twin.prev;
+                    e.next.incidentFace = startF;
+                    e.twin.prev.next = e.next;
+                    e.twin.prev.incidentFace = startF;
+
+                    removed[e.id] = true; // apagar edges comuns
+                    removed[e.twin.id] = true;
+                    metrics.halfEdgesRemoved += 2;
+                    e = e.twin.next;
+                }
+                else {
+                    e = e.next;
+                }
+                union(parent, startF.id, e.incidentFace.id);
+                e.incidentFace = startF;
+            }
+
+            List<Vertex> visRegion = new ArrayList<>();
+
+            visRegion.add(startE.origin);
+            e = startE.next;
+            while(e != startE) {
+                int last = visRegion.size() - 1;
+                if (last >= 1 && areCollinear(visRegion.get(last-1), visRegion.get(last), e.origin)) {
+                    visRegion.remove(last);
+                }
+                visRegion.add(e.origin);
+                e = e.next;
+            }
+
+            int last = visRegion.size() - 1;
+            if (last >= 1 && areCollinear(visRegion.get(last-1), visRegion.get(last), visRegion.get(0))) {
+                visRegion.remove(last);
+            }
+            int first = 0; // first vertex of the region, skipped if it is collinear with its neighbours
+            if (visRegion.size() >= 2 && areCollinear(visRegion.get(1), visRegion.get(0), visRegion.get(visRegion.size()-1))) {
+                first = 1;
+            }
+            int size = visRegion.size() - first;
+
+            int startIndex = 0;
+            Vertex startV = visRegion.get(first);
+            for (int i=0; i<size; i++) { // just to start the ccw order from the highest leftmost vertex of the region
+                Vertex v = visRegion.get(first + i);
+                if (v.x < startV.x || (v.x == startV.x && v.y > startV.y)) {
+                    startIndex = i;
+                    startV = v;
+                }
+            }
+
+            List<Vertex> ordered = new ArrayList<>(size);
+            for (int i=0; i<size; i++) {
+                ordered.add(visRegion.get(first + (startIndex + i) % size));
+            }
+            regions.add(ordered);
+        }
+
+        halfEdges.removeIf(h -> removed[h.id]); // one pass over the list for all the common edges
+
+        metrics.regions += regions.size();
+        metrics.end(Metrics.Phase.MERGE);
+        return regions;
+    }
+
+    // Largest number of walls between the guard and a face of the polygon (computeVisibility must have been called first)
+    public int maxModem() {
+        int max = 0;
+        for (Face f : faces) {
+            if (f.counter != 0) {max = Math.max(max, f.modem);}
+        }
+        return max;
+    }
+
+    // After computeVisibility(guards), the illuminated regions of each guard: those made of the faces with at most k walls to it and fewer to
+    // any guard before it (server is what computeVisibility returned). Together they cover the regions mergeRegions(k) gives. As in
+    // mergeAllLevels, every guard is merged on its own copy of the visible DCEL, and this one is left as it was. Like every region, they are
+    // given by their outer boundary only, so one may enclose regions of other guards
+    public List<List<List<Vertex>>> mergeServedRegions(int k, int[] server, int guards) {
+        DCELSnapshot visible = new DCELSnapshot(this);
+        List<List<List<Vertex>>> served = new ArrayList<>();
+        for (int g = 0; g < guards; g++) {
+            DCEL own = visible.instantiate();
+            own.metrics = metrics;
+            for (Face f : own.faces) {
+                if (server[f.id] != g) {f.modem = Integer.MAX_VALUE;} // outside the regions of this guard, as the outer face
+            }
+            served.add(own.mergeRegions(k));
+        }
+        return served;
+    }
+
+    // Area of the faces with at most k walls to the guard that serves them, for each guard (server as in mergeServedRegions). Unlike the
+    // regions, the faces have no holes, so this is the area each guard really illuminates. Faces no guard serves (there were no guards) count
+    // for none
+    public double[] servedAreas(int k, int[] server, int guards) {
+        double[] area = new double[guards];
+        for (Face f : faces) {
+            if (f.counter == 0 || f.modem > k || server[f.id] < 0) continue;
+            List<Vertex> cycle = new ArrayList<>();
+            HalfEdge e = f.outerComponent;
+            do {
+                cycle.add(e.origin);
+                e = e.next;
+            } while (e != f.outerComponent);
+            area[server[f.id]] += area(cycle);
+        }
+        return area;
+    }
+
+    // The illuminated regions of every k = 0, 2, ..., maxModem() from one visibility computation. Merging destroys the faces, so the
+    // visible DCEL is copied once and every level is merged on its own instance of the copy; this DCEL is left as it was
+    public List<List<List<Vertex>>> mergeAllLevels() {
+        DCELSnapshot visible = new DCELSnapshot(this);
+        int max = maxModem();
+        List<List<List<Vertex>>> levels = new ArrayList<>();
+        for (int k = 0; k <= max; k += 2) {
+            DCEL level = visible.instantiate();
+            level.metrics = metrics; // the merges are part of this run
+            levels.add(level.mergeRegions(k));
+        }
+        return levels;
+    }
+
+    // Root of the disjoint-set of face i
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]]; // path halving
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // Joins the set of face b into the set of face a
+    private static void union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a != b) {parent[b] = a;} // the first argument stays the root
+    }
+
+
+//-------------------------------------------------------- AUXILIARY CODE TO CALCULATE IMPORTANT VALUES -------------------------------------------------------- //
+
+
+
+    public void iterateThroughEdges() { // this function was used to test the code in earlier stages
+        System.out.println("Pontos de cada edge:");
+        for (int i=0; i<halfEdges.size()/2; i++) {
+            HalfEdge h = halfEdges.get(2*i);
+            HalfEdge h1 = null;
+
+            System.out.println("\n" + (i+1) + "th cycle");
+
+            while (h != h1) { 
+                h1 = halfEdges.get(2*i);
+                System.out.println("Origin: (" + h.origin.x + ", " + h.origin.y + ")");
+                System.out.println("Orgin face: f" + h.incidentFace.counter);
+                System.out.println("Twin Origin: (" + h.twin.origin.x + ", " + h.twin.origin.y + ")");
+                System.out.println("Twin face: f" + h.twin.incidentFace.counter);
+                h = h.next;
+            }
+        }
+    }
+
+    public Vertex seg_intersect(Vertex v1, Vertex v2, Vertex v3, Vertex v4) { //check if two segments intersect
+        metrics.segIntersects++;
+        return intersect(v1, v2, v3, v4, true);
+    }
+
+    public Vertex line_intersect(Vertex v1, Vertex v2, Vertex v3, Vertex v4) { //check if line intersects segment
+        metrics.lineIntersects++;
+        return intersect(v1, v2, v3, v4, false);
+    }
+
+    // Intersection of the segment v1 -> v2 (or of the line through v1 and v2 if segment is false) with the segment v3 -> v4, rounded to 6 decimal places,
+    // except for the coordinate of a vertical or horizontal segment, which is kept as it is so that the point stays on it (rounding would move it
+    // off a wall at e.g. x = 0.3 * 7 = 2.1000000000000005). Parallel lines never intersect (if concurrent, the intersection is not a point, which
+    // is never useful here).
+    // Only primitive doubles are used and a Vertex is only allocated when there is an intersection
+    static Vertex intersect(Vertex v1, Vertex v2, Vertex v3, Vertex v4, boolean segment) {
+        return intersect(v1.x, v1.y, v2.x, v2.y, v3.x, v3.y, v4.x, v4.y, segment);
+    }
+
+    static Vertex intersect(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4, boolean segment) {
+        double max_x = Math.max(x3,x4);
+        double max_y = Math.max(y3,y4);
+        double min_x = Math.min(x3,x4);
+        double min_y = Math.min(y3,y4);
+        if (segment) {
+            max_x = Math.min(max_x, Math.max(x1,x2));
+            max_y = Math.min(max_y, Math.max(y1,y2));
+            min_x = Math.max(min_x, Math.min(x1,x2));
+            min_y = Math.max(min_y, Math.min(y1,y2));
+        }
+        max_x = round(max_x);
+        max_y = round(max_y);
+        min_x = round(min_x);
+        min_y = round(min_y);
+        if (max_x < min_x || max_y < min_y) {return null;} // bounding boxes do not overlap
+
+        double x;
+        double y;
+        if (x1 == x2) { // v1 -> v2 vertical
+            if (x3 == x4) {return null;} //if both vertical discard (either concurrent or dont intersect - neither useful)
+            x = x1;
+            if (round(x) > max_x || round(x) < min_x) {return null;} // the bounds are rounded
+            y = (y3 == y4) ? y3 : round(y3 + (x - x3) * (y4 - y3) / (x4 - x3));
+        }
+        else if (x3 == x4) { // v3 -> v4 vertical
+            x = x3;
+            if (round(x) > max_x || round(x) < min_x) {return null;}
+            y = (y1 == y2) ? y1 : round(y1 + (x - x1) * (y2 - y1) / (x2 - x1));
+        }
+        else {
+            double d1x = x2 - x1, d1y = y2 - y1;
+            double d2x = x4 - x3, d2y = y4 - y3;
+            double denom = d1x * d2y - d1y * d2x;
+            if (denom == 0) {return null;} // parallel
+
+            // v3 and v4 clearly on the same side of the line through v1 and v2: the intersection falls outside v3 -> v4
+            double o3 = d1x * (y3 - y1) - d1y * (x3 - x1);
+            double o4 = d1x * (y4 - y1) - d1y * (x4 - x1);
+            double tolerance = 2e-6 * (Math.abs(d1x) + Math.abs(d1y));
+            if ((o3 > tolerance && o4 > tolerance) || (o3 < -tolerance && o4 < -tolerance)) {return null;}
+
+            double t = ((x3 - x1) * d2y - (y3 - y1) * d2x) / denom;
+            x = round(x1 + t * d1x);
+            y = (d1y == 0) ? y1 : (d2y == 0) ? y3 : round(y1 + t * d1y);
+            if (x > max_x || x < min_x) {return null;}
+        }
+
+        if (round(y) > max_y || round(y) < min_y) {return null;}
+        return new Vertex(x, y);
+    }
+
+    static double round(double value) { // rounds half away from zero to 6 decimal places
+        if (Math.abs(value) >= 1e12) {return value;}
+        if (value < 0) {return -Math.round(-value * 1e6) / 1e6;}
+        return Math.round(value * 1e6) / 1e6;
+    }
+
+    public static double area(List<Vertex> polygon) { // shoelace formula
+        double sum = 0;
+        for (int i = 0; i < polygon.size(); i++) {
+            Vertex a = polygon.get(i);
+            Vertex b = polygon.get((i + 1) % polygon.size());
+            sum += a.x * b.y - b.x * a.y;
+        }
+        return Math.abs(sum) / 2;
+    }
+
+    public static boolean areCollinear(Vertex a, Vertex b, Vertex c) {
+        // Define a small tolerance value to account for floating-point inaccuracies
+        double epsilon = 1e-5;
+
+        // Calculate the cross product of vectors formed by points (a, b) and (a, c)
+        double crossProduct = (b.y - a.y) * (c.x - a.x) - (c.y - a.y) * (b.x - a.x);
+
+        // If the absolute value of the cross product is less than epsilon, points are considered collinear
+        return Math.abs(crossProduct) < epsilon;
+    }
+
+    public boolean segInPoly(Vertex start, Vertex end) { // check if segment is inside the polygon
+        Vertex center = new Vertex((start.x + end.x) / 2 + 0.00382, (start.y + end.y) / 2 + 0.00382); // added value just to make lesser odds of corresponding to HV partition line
+        Vertex inf = new Vertex(1000000, center.y);
+
+        int intersect = 0;
+        for (HalfEdge e : (walls != null ? walls : externalEdgeIndex).segmentCandidates(center, inf)) {
+            Vertex i = seg_intersect(center, inf, e.origin, e.next.origin);
+            if (i != null) {
+                if (!i.near(e.next.origin)) { // para nao contabilizar 2 vezes (como inicio de um edge e fim de outro)
+                    intersect++;
+                }
+            }
+        }
+
+        if (intersect % 2 == 0) {
+            return false;
+        }
+        return true;
+    }
+}
+
+
+// Frozen copy of a DCEL (usually the polygon with its H/V partition already loaded, or a DCEL after computeVisibility) kept in flat arrays.
+// It is never modified after being built, so a single snapshot can be shared by every guard, even from different threads,
+// and each query works on its own DCEL obtained with instantiate()
+class DCELSnapshot {
+    private final Vertex[] origin; // per half-edge: origin vertex (vertices are never modified, so they are shared)
+    private final int[] twin, next, prev, face; // per half-edge: indices of the twin, next and previous half-edges and of the incident face
+    private final int[] faceCounter, faceOuter, faceModem; // per face: its counter, the index of its outer component and its visibility
+    private final Vertex[] faceCentroid;
+    private final int[] externalEdges;
+    private final Vertex[] vertices, externalVertices;
+    private final VertexIndex vertexIndex, externalVertexIndex;
+    private final EdgeIndex externalEdgeIndex;
+
+    public DCELSnapshot(DCEL dcel) {
+        int n = dcel.halfEdges.size();
+        IdentityHashMap<HalfEdge, Integer> edgeIndex = new IdentityHashMap<>();
+        IdentityHashMap<Face, Integer> faceIndex = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            edgeIndex.put(dcel.halfEdges.get(i), i);
+        }
+        for (int i = 0; i < dcel.faces.size(); i++) {
+            faceIndex.put(dcel.faces.get(i), i);
+        }
+
+        origin = new Vertex[n];
+        twin = new int[n];
+        next = new int[n];
+        prev = new int[n];
+        face = new int[n];
+        for (int i = 0; i < n; i++) {
+            HalfEdge e = dcel.halfEdges.get(i);
+            origin[i] = e.origin;
+            twin[i] = edgeIndex.getOrDefault(e.twin, -1);
+            next[i] = edgeIndex.getOrDefault(e.next, -1);
+            prev[i] = edgeIndex.getOrDefault(e.prev, -1);
+            face[i] = faceIndex.getOrDefault(e.incidentFace, -1);
+        }
+
+        faceCounter = new int[dcel.faces.size()];
+        faceOuter = new int[dcel.faces.size()];
+        faceModem = new int[dcel.faces.size()];
+        faceCentroid = new Vertex[dcel.faces.size()];
+        for (int i = 0; i < faceCounter.length; i++) {
+            Face f = dcel.faces.get(i);
+            faceCounter[i] = f.counter;
+            faceOuter[i] = edgeIndex.getOrDefault(f.outerComponent, -1);
+            faceModem[i] = f.modem;
+            faceCentroid[i] = f.centroid;
+        }
+
+        externalEdges = new int[dcel.externalEdges.size()];
+        for (int i = 0; i < externalEdges.length; i++) {
+            externalEdges[i] = edgeIndex.get(dcel.externalEdges.get(i));
+        }
+        vertices = dcel.vertices.toArray(new Vertex[0]);
+        externalVertices = dcel.externalVertices.toArray(new Vertex[0]);
+        vertexIndex = new VertexIndex(dcel.vertexIndex);
+        externalVertexIndex = new VertexIndex(dcel.externalVertexIndex);
+        externalEdgeIndex = new EdgeIndex(dcel.externalEdgeIndex, null);
+    }
+
+    // Snapshot of a DCEL built on the compact representation, equal to the one of the same DCEL built on objects
+    public DCELSnapshot(CompactDCEL dcel) {
+        Vertex[] points = dcel.points();
+        int n = dcel.edgeCount;
+        origin = new Vertex[n];
+        for (int i = 0; i < n; i++) {
+            origin[i] = points[dcel.origin[i]];
+        }
+        twin = Arrays.copyOf(dcel.twin, n);
+        next = Arrays.copyOf(dcel.next, n);
+        prev = Arrays.copyOf(dcel.prev, n);
+        face = Arrays.copyOf(dcel.face, n);
+
+        faceCounter = Arrays.copyOf(dcel.faceCounter, dcel.faceCount);
+        faceOuter = Arrays.copyOf(dcel.faceOuter, dcel.faceCount);
+        faceModem = new int[dcel.faceCount];
+        faceCentroid = new Vertex[dcel.faceCount];
+
+        externalEdges = Arrays.copyOf(dcel.externalEdges, dcel.externalEdgeCount);
+        vertices = new Vertex[dcel.vertexCount];
+        vertexIndex = new VertexIndex();
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = points[dcel.vertices[i]];
+            vertexIndex.add(vertices[i]);
+        }
+        externalVertices = dcel.polygon.clone();
+        externalVertexIndex = new VertexIndex();
+        for (Vertex v : externalVertices) {
+            externalVertexIndex.add(v);
+        }
+
+        externalEdgeIndex = edgeIndex(origin, next, externalEdges);
+    }
+
+    // Snapshot read back from the arrays saved by toBytes
+    private DCELSnapshot(Vertex[] origin, int[] twin, int[] next, int[] prev, int[] face, int[] faceCounter, int[] faceOuter, int[] faceModem,
+                         Vertex[] faceCentroid, int[] externalEdges, Vertex[] vertices, Vertex[] externalVertices) {
+        this.origin = origin;
+        this.twin = twin;
+        this.next = next;
+        this.prev = prev;
+        this.face = face;
+        this.faceCounter = faceCounter;
+        this.faceOuter = faceOuter;
+        this.faceModem = faceModem;
+        this.faceCentroid = faceCentroid;
+        this.externalEdges = externalEdges;
+        this.vertices = vertices;
+        this.externalVertices = externalVertices;
+        vertexIndex = new VertexIndex();
+        for (Vertex v : vertices) {
+            vertexIndex.add(v);
+        }
+        externalVertexIndex = new VertexIndex();
+        for (Vertex v : externalVertices) {
+            externalVertexIndex.add(v);
+        }
+        externalEdgeIndex = edgeIndex(origin, next, externalEdges);
+    }
+
+    private static EdgeIndex edgeIndex(Vertex[] origin, int[] next, int[] externalEdges) {
+        List<HalfEdge> external = new ArrayList<>(); // EdgeIndex only needs the endpoints of each edge
+        for (int e : externalEdges) {
+            HalfEdge h = new HalfEdge(origin[e]);
+            h.next = new HalfEdge(origin[next[e]]);
+            external.add(h);
+        }
+        return new EdgeIndex(new EdgeIndex(external), null);
+    }
+
+    private static final int MAGIC = 0x54414150, VERSION = 1; // "TAAP"
+
+    // The snapshot as the file PartitionCache keeps: a header with the sizes, the points (the external vertices first, then every other
+    // vertex used, once each) and the centroids as doubles, then the arrays as ints, with the vertices given by their index among the points
+    public ByteBuffer toBytes() {
+        IdentityHashMap<Vertex, Integer> ids = new IdentityHashMap<>();
+        List<Vertex> points = new ArrayList<>();
+        for (Vertex[] list : new Vertex[][] {externalVertices, vertices, origin}) {
+            for (Vertex v : list) {
+                if (ids.putIfAbsent(v, points.size()) == null) {points.add(v);}
+            }
+        }
+        int edges = origin.length, faces = faceCounter.length;
+        ByteBuffer buffer = ByteBuffer.allocate(8 * Integer.BYTES + 2 * (points.size() + faces) * Double.BYTES
+            + (5 * edges + 3 * faces + externalEdges.length + vertices.length + externalVertices.length) * Integer.BYTES);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(points.size()).putInt(edges).putInt(faces)
+            .putInt(externalEdges.length).putInt(vertices.length).putInt(externalVertices.length);
+        for (Vertex v : points) {
+            buffer.putDouble(v.x).putDouble(v.y);
+        }
+        for (Vertex c : faceCentroid) {
+            buffer.putDouble(c == null ? Double.NaN : c.x).putDouble(c == null ? Double.NaN : c.y);
+        }
+        for (int[] array : new int[][] {twin, next, prev, face, faceCounter, faceOuter, faceModem, externalEdges}) {
+            buffer.asIntBuffer().put(array);
+            buffer.position(buffer.position() + array.length * Integer.BYTES);
+        }
+        for (Vertex[] list : new Vertex[][] {origin, vertices, externalVertices}) {
+            for (Vertex v : list) {
+                buffer.putInt(ids.get(v));
+            }
+        }
+        return buffer.flip();
+    }
+
+    // The snapshot saved by toBytes, or null if the buffer holds the snapshot of another polygon. Throws IOException if it does not hold a
+    // whole snapshot or any index in it is out of its array or does not give a twin and a next/prev that agree, so a corrupt file is never
+    // turned into a DCEL
+    public static DCELSnapshot fromBytes(ByteBuffer buffer, Vertex[] polygon) throws IOException {
+        if (buffer.remaining() < 8 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a partition snapshot");
+        }
+        int pointCount = buffer.getInt(), edges = buffer.getInt(), faces = buffer.getInt();
+        int externalEdgeCount = buffer.getInt(), vertexCount = buffer.getInt(), externalVertexCount = buffer.getInt();
+        long size = 2L * (pointCount + faces) * Double.BYTES
+            + (5L * edges + 3L * faces + externalEdgeCount + vertexCount + externalVertexCount) * Integer.BYTES;
+        if (Math.min(Math.min(pointCount, edges), Math.min(Math.min(faces, externalEdgeCount), Math.min(vertexCount, externalVertexCount))) < 0
+            || size != buffer.remaining()) {
+            throw new IOException("snapshot of " + buffer.remaining() + " bytes where its sizes need " + size);
+        }
+        if (externalVertexCount != polygon.length || pointCount < polygon.length) return null;
+
+        double[] coordinates = doubles(buffer, 2 * pointCount);
+        for (int i = 0; i < polygon.length; i++) {
+            if (coordinates[2 * i] != polygon[i].x || coordinates[2 * i + 1] != polygon[i].y) return null;
+        }
+        Vertex[] points = new Vertex[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            points[i] = i < polygon.length ? polygon[i] : new Vertex(coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+        double[] centroids = doubles(buffer, 2 * faces);
+        Vertex[] faceCentroid = new Vertex[faces];
+        for (int i = 0; i < faces; i++) {
+            if (!Double.isNaN(centroids[2 * i])) {faceCentroid[i] = new Vertex(centroids[2 * i], centroids[2 * i + 1]);}
+        }
+
+        int[] twin = ints(buffer, edges, edges), next = ints(buffer, edges, edges), prev = ints(buffer, edges, edges), face = ints(buffer, edges, faces);
+        int[] faceCounter = ints(buffer, faces), faceOuter = ints(buffer, faces, edges), faceModem = ints(buffer, faces);
+        int[] externalEdges = ints(buffer, externalEdgeCount, edges);
+        Vertex[] origin = vertices(buffer, edges, points), vertices = vertices(buffer, vertexCount, points);
+        Vertex[] externalVertices = vertices(buffer, externalVertexCount, points);
+        for (int i = 0; i < edges; i++) {
+            if (twin[i] == i || twin[twin[i]] != i || prev[next[i]] != i) { // next is then a permutation, so every face cycle is closed
+                throw new IOException("half-edge " + i + " is not linked back by its twin or its next");
+            }
+        }
+        return new DCELSnapshot(origin, twin, next, prev, face, faceCounter, faceOuter, faceModem, faceCentroid, externalEdges, vertices, externalVertices);
+    }
+
+    private static double[] doubles(ByteBuffer buffer, int n) {
+        double[] array = new double[n];
+        buffer.asDoubleBuffer().get(array);
+        buffer.position(buffer.position() + n * Double.BYTES);
+        return array;
+    }
+
+    private static int[] ints(ByteBuffer buffer, int n) {
+        int[] array = new int[n];
+        buffer.asIntBuffer().get(array);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+        return array;
+    }
+
+    // n indices into an array of the given length
+    private static int[] ints(ByteBuffer buffer, int n, int bound) throws IOException {
+        int[] array = ints(buffer, n);
+        for (int i : array) {
+            if (i < 0 || i >= bound) throw new IOException("index " + i + " out of 0.." + (bound - 1));
+        }
+        return array;
+    }
+
+    private static Vertex[] vertices(ByteBuffer buffer, int n, Vertex[] points) throws IOException {
+        int[] ids = ints(buffer, n, points.length);
+        Vertex[] array = new Vertex[n];
+        for (int i = 0; i < n; i++) {
+            array[i] = points[ids[i]];
+        }
+        return array;
+    }
+
+    // Builds a new mutable DCEL equal to the one the snapshot was taken from, in time linear on its size
+    public DCEL instantiate() {
+        DCEL dcel = new DCEL();
+        HalfEdge[] edges = new HalfEdge[origin.length];
+        Face[] faces = new Face[faceCounter.length];
+
+        for (int i = 0; i < faces.length; i++) {
+            faces[i] = new Face(null, faceCounter[i]);
+            faces[i].modem = faceModem[i];
+            faces[i].centroid = faceCentroid[i];
+            dcel.addFace(faces[i]);
+        }
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = new HalfEdge(origin[i]);
+            edges[i].incidentFace = face[i] < 0 ? null : faces[face[i]];
+            dcel.addEdge(edges[i]);
+        }
+        for (int i = 0; i < edges.length; i++) {
+            edges[i].twin = twin[i] < 0 ? null : edges[twin[i]];
+            edges[i].next = next[i] < 0 ? null : edges[next[i]];
+            edges[i].prev = prev[i] < 0 ? null : edges[prev[i]];
+        }
+        for (int i = 0; i < faces.length; i++) {
+            faces[i].outerComponent = faceOuter[i] < 0 ? null : edges[faceOuter[i]];
+        }
+
+        for (int i : externalEdges) {
+            dcel.addExternalEdge(edges[i]);
+        }
+        Collections.addAll(dcel.vertices, vertices);
+        Collections.addAll(dcel.externalVertices, externalVertices);
+        dcel.vertexIndex = new VertexIndex(vertexIndex);
+        dcel.externalVertexIndex = new VertexIndex(externalVertexIndex);
+        dcel.externalEdgeIndex = new EdgeIndex(externalEdgeIndex, dcel.externalEdges);
+        dcel.metrics = new Metrics(); // copying is not part of any run
+
+        return dcel;
+    }
+
+    public List<Vertex> externalVertices() {
+        return Collections.unmodifiableList(Arrays.asList(externalVertices));
+    }
+
+    public int halfEdgeCount() {
+        return origin.length;
+    }
+}
+
+
+// Partitioned polygons saved on disk, so a run on a polygon that was already partitioned (with any guard or k) reads its DCEL instead of
+// building it again. Each polygon has its file <dir>/<fingerprint>.dcel, which also holds the polygon, so a polygon with the same fingerprint
+// is never given the partition of another one
+class PartitionCache {
+    private final Path dir;
+
+    public PartitionCache(String dir) {
+        this.dir = Paths.get(dir);
+    }
+
+    // 64-bit FNV-1a hash of the coordinates of the vertices
+    static long fingerprint(Vertex[] polygon) {
+        long hash = 0xcbf29ce484222325L;
+        for (Vertex v : polygon) {
+            for (long bits : new long[] {Double.doubleToLongBits(v.x), Double.doubleToLongBits(v.y)}) {
+                for (int i = 0; i < 64; i += 8) {
+                    hash = (hash ^ ((bits >>> i) & 0xff)) * 0x100000001b3L;
+                }
+            }
+        }
+        return hash;
+    }
+
+    Path file(Vertex[] polygon) {
+        return dir.resolve(String.format("%016x.dcel", fingerprint(polygon)));
+    }
+
+    // The partition saved for this polygon, or null if there is none (or the file cannot be read or is corrupt, see DCELSnapshot.fromBytes)
+    public DCELSnapshot load(Vertex[] polygon) {
+        Path file = file(polygon);
+        if (!Files.isRegularFile(file)) return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return DCELSnapshot.fromBytes(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), polygon);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring the unreadable partition cache file " + file + ": " + e);
+            return null;
+        }
+    }
+
+    // Writes to a temporary file which then replaces the old one, so runs sharing the directory never read a half written file
+    public void save(Vertex[] polygon, DCELSnapshot snapshot) {
+        Path file = file(polygon);
+        Path temp = null;
+        try {
+            Files.createDirectories(dir);
+            temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = snapshot.toBytes();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Could not save the partition to " + file + ": " + e);
+            try {
+                if (temp != null) {Files.deleteIfExists(temp);}
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
+
+
+// The DCEL of the partitioned polygon with every vertex, half-edge and face stored as a row of primitive arrays instead of an object, so a
+// half-edge takes 7 ints (origin, twin, next, prev, face, next in the outgoing list of its origin) instead of an object plus its list entries,
+// and walking a face reads consecutive ints. createDCELFromPolygon and addPartition do exactly what they do in DCEL, on indices; DCELSnapshot
+// turns the result into the objects computeVisibility and mergeFaces work on
+class CompactDCEL {
+    static final int NONE = -1;
+
+    // Points where half-edges start, each one once; the first ones are the vertices of the polygon. Points near each other are only kept apart
+    // if their coordinates differ, as in DCEL, where the half-edges keep the Vertex they were created with
+    double[] px = new double[16], py = new double[16];
+    int pointCount;
+    Vertex[] polygon;
+
+    int[] vertices = new int[16]; // the points added as vertices, as in DCEL.vertices
+    int vertexCount;
+    VertexIndex vertexIndex = new VertexIndex();
+
+    int[] origin = new int[16], twin = new int[16], next = new int[16], prev = new int[16], face = new int[16]; // per half-edge
+    int edgeCount;
+    int[] externalEdges = new int[16];
+    int externalEdgeCount;
+
+    int[] faceOuter = new int[16], faceCounter = new int[16]; // per face
+    int faceCount;
+
+    private VertexIndex origins = new VertexIndex(); // locations of the half-edge origins
+    private int[] firstOut = new int[16]; // per location in origins, the last half-edge added that starts there
+    private int[] nextOut = new int[16]; // per half-edge, the next one that starts at the same location
+    Metrics metrics = new Metrics();
+
+    private int addPoint(double x, double y) {
+        if (pointCount == px.length) {
+            px = Arrays.copyOf(px, 2 * pointCount);
+            py = Arrays.copyOf(py, 2 * pointCount);
+        }
+        px[pointCount] = x;
+        py[pointCount] = y;
+        return pointCount++;
+    }
+
+    // The point at (x, y): the vertex already there if it has these very coordinates, otherwise a new point, which is also a new vertex if
+    // no vertex is near it (as DCEL does with the Vertex it is given)
+    private int pointAt(double x, double y) {
+        int id = vertexIndex.indexOf(x, y);
+        if (id >= 0 && px[vertices[id]] == x && py[vertices[id]] == y) return vertices[id];
+        int p = addPoint(x, y);
+        if (id < 0) {addVertex(p);}
+        return p;
+    }
+
+    private void addVertex(int p) {
+        vertices = grow(vertices, vertexCount);
+        vertices[vertexCount++] = p;
+        vertexIndex.add(px[p], py[p]);
+    }
+
+    private boolean same(int p, Vertex v) { // as in Vertex.near
+        return Math.abs(px[p] - v.x) < Vertex.EPSILON && Math.abs(py[p] - v.y) < Vertex.EPSILON;
+    }
+
+    private int addEdge(int p) {
+        metrics.halfEdgesCreated++;
+        if (edgeCount == origin.length) {
+            origin = Arrays.copyOf(origin, 2 * edgeCount);
+            twin = Arrays.copyOf(twin, 2 * edgeCount);
+            next = Arrays.copyOf(next, 2 * edgeCount);
+            prev = Arrays.copyOf(prev, 2 * edgeCount);
+            face = Arrays.copyOf(face, 2 * edgeCount);
+            nextOut = Arrays.copyOf(nextOut, 2 * edgeCount);
+        }
+        int e = edgeCount++;
+        origin[e] = p;
+        twin[e] = next[e] = prev[e] = face[e] = NONE;
+        addOutgoing(e);
+        return e;
+    }
+
+    private void addOutgoing(int e) {
+        int loc = origins.indexOf(px[origin[e]], py[origin[e]]);
+        if (loc < 0) {
+            loc = origins.add(px[origin[e]], py[origin[e]]);
+            firstOut = grow(firstOut, loc);
+            firstOut[loc] = NONE;
+        }
+        nextOut[e] = firstOut[loc];
+        firstOut[loc] = e;
+    }
+
+    private void moveOrigin(int e, int p) {
+        int loc = origins.findOrAdd(px[origin[e]], py[origin[e]]);
+        if (firstOut[loc] == e) {
+            firstOut[loc] = nextOut[e];
+        }
+        else {
+            int before = firstOut[loc];
+            while (nextOut[before] != e) {before = nextOut[before];}
+            nextOut[before] = nextOut[e];
+        }
+        origin[e] = p;
+        addOutgoing(e);
+    }
+
+    private void addExternalEdge(int e) {
+        externalEdges = grow(externalEdges, externalEdgeCount);
+        externalEdges[externalEdgeCount++] = e;
+    }
+
+    private int addFace(int outer, int counter) {
+        metrics.facesCreated++;
+        faceOuter = grow(faceOuter, faceCount);
+        faceCounter = grow(faceCounter, faceCount);
+        faceOuter[faceCount] = outer;
+        faceCounter[faceCount] = counter;
+        return faceCount++;
+    }
+
+    private static int[] grow(int[] a, int size) {
+        return size < a.length ? a : Arrays.copyOf(a, 2 * a.length);
+    }
+
+    // The half-edges of face f, starting from its outer component
+    public int[] faceEdges(int f) {
+        int[] edges = new int[8];
+        int count = 0;
+        int e = faceOuter[f];
+        do {
+            edges = grow(edges, count);
+            edges[count++] = e;
+            e = next[e];
+        } while (e != faceOuter[f]);
+        return Arrays.copyOf(edges, count);
+    }
+
+    // Half-edges that start or end at the location of point o, in the order they were added. A point where no half-edge starts gets all of
+    // them: DCEL first looks among the polygon edges, but the partitions of HVPartitioner always start at a vertex of the polygon
+    private int[] edgesAt(int o) {
+        int loc = origins.indexOf(px[o], py[o]);
+        int[] around = new int[8];
+        int count = 0;
+        for (int e = loc < 0 ? NONE : firstOut[loc]; e != NONE; e = nextOut[e]) {
+            around = grow(around, count + 1);
+            around[count++] = e;
+            around[count++] = twin[e];
+        }
+        if (count == 0) {
+            around = new int[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {around[e] = e;}
+            return around;
+        }
+        around = Arrays.copyOf(around, count);
+        Arrays.sort(around);
+        return around;
+    }
+
+    private Vertex segIntersect(int o, Vertex end, int e) {
+        metrics.segIntersects++;
+        int to = origin[next[e]];
+        return DCEL.intersect(px[o], py[o], end.x, end.y, px[origin[e]], py[origin[e]], px[to], py[to], true);
+    }
+
+    // Same as DCEL.createDCELFromPolygon
+    public void createDCELFromPolygon(Vertex[] polygonVertices) {
+        int n = polygonVertices.length;
+        polygon = polygonVertices;
+        int[] edges = new int[n];
+        int inner = addFace(NONE, 1);
+        int outer = addFace(NONE, 0);
+
+        for (int i = 0; i < n; i++) {
+            addPoint(polygonVertices[i].x, polygonVertices[i].y);
+        }
+        for (int i = 0; i < n; i++) {
+            int edge = addEdge(i);
+            int twinEdge = addEdge((i + 1) % n);
+            twin[edge] = twinEdge;
+            twin[twinEdge] = edge;
+            face[edge] = inner;
+            face[twinEdge] = outer;
+            edges[i] = edge;
+            addVertex(i);
+            addExternalEdge(edge);
+        }
+
+        for (int i = 0; i < n; i++) {
+            next[edges[i]] = edges[(i + 1) % n];
+            prev[edges[(i + 1) % n]] = edges[i];
+            prev[twin[edges[i]]] = twin[edges[(i + 1) % n]];
+            next[twin[edges[(i + 1) % n]]] = twin[edges[i]];
+        }
+
+        faceOuter[inner] = edges[0];
+        faceOuter[outer] = twin[edges[0]];
+    }
+
+    // Same as DCEL.addPartition
+    public void addPartition(Vertex originV, Vertex end) {
+        int o = pointAt(originV.x, originV.y);
+
+        int h = NONE;
+        int f;
+        int[] around = edgesAt(o);
+        int[] intersectionsOg = new int[around.length];
+        int candidates = 0;
+        for (int e : around) {
+            if (faceCounter[face[e]] == 0) continue; // discard half-edges incident to the external face
+            Vertex i = segIntersect(o, end, e);
+            if (i != null && i.near(originV)) {
+                intersectionsOg[candidates++] = e;
+            }
+        }
+
+        int max_intersect = 0;
+        for (int c = 0; c < candidates; c++) { // the face crossed most times by origin -> end contains its first part
+            int start = intersectionsOg[c];
+            int intersections = 1;
+            for (int e = next[start]; e != start; e = next[e]) {
+                if (segIntersect(o, end, e) != null) {
+                    intersections++;
+                }
+            }
+            if (intersections > max_intersect) {
+                max_intersect = intersections;
+                h = start;
+            }
+        }
+
+        face[h] = face[next[h]];
+        int prevE = h;
+
+        if (same(origin[h], originV)) {
+            f = addFace(h, faceCount);
+            face[h] = f;
+            prevE = prev[h];
+        }
+        else if (same(origin[next[h]], originV)) {
+            h = next[h];
+            f = addFace(h, faceCount);
+            face[h] = f;
+        }
+        else { // origin inside h: split it
+            int nexth = addEdge(o);
+            next[nexth] = next[h];
+            prev[next[h]] = nexth;
+            next[h] = NONE;
+
+            int nexthTwin = addEdge(origin[twin[h]]);
+            moveOrigin(twin[h], o);
+            prev[nexthTwin] = prev[twin[h]];
+            next[prev[twin[h]]] = nexthTwin;
+            next[nexthTwin] = twin[h];
+            prev[twin[h]] = nexthTwin;
+
+            f = addFace(nexth, faceCount);
+            face[nexth] = f;
+            face[nexthTwin] = face[twin[h]];
+            twin[nexth] = nexthTwin;
+            twin[nexthTwin] = nexth;
+            addExternalEdge(nexth);
+
+            h = nexth;
+        }
+
+        Vertex intersection = originV;
+        int nextE = h;
+        h = next[h];
+
+        int passOg = 0;
+        int steps = 0, limit = 2 * edgeCount; // as in DCEL.addPartition
+        double farthest = 0;
+
+        while (!intersection.near(end)) {
+            if (++steps > limit) {
+                throw new IllegalStateException("addPartition from (" + originV.x + "," + originV.y + ") to (" + end.x + "," + end.y + ") goes round a face without reaching the end");
+            }
+            Vertex i = segIntersect(o, end, h);
+            if (i != null) {
+                if (i.near(originV)) {passOg++;}
+                double along = (i.x - originV.x) * (end.x - originV.x) + (i.y - originV.y) * (end.y - originV.y);
+                if (along > farthest) {
+                    farthest = along;
+                    steps = 0;
+                }
+                intersection = i;
+                int ip = pointAt(i.x, i.y);
+                face[h] = f;
+
+                if (!same(origin[next[h]], i) && !same(origin[h], i)) { // i inside h: split h and its twin
+                    int nexth = addEdge(ip);
+                    int hTwin = addEdge(ip);
+                    face[nexth] = face[prevE];
+                    faceOuter[face[nexth]] = nexth;
+                    next[nexth] = next[h];
+                    prev[next[h]] = nexth;
+
+                    next[hTwin] = next[twin[h]];
+                    prev[next[twin[h]]] = hTwin;
+                    next[twin[h]] = NONE;
+                    twin[nexth] = twin[h];
+                    twin[twin[h]] = nexth;
+                    twin[h] = hTwin;
+                    twin[hTwin] = h;
+
+                    int newh = addEdge(ip);
+                    int newhTwin = addEdge(origin[nextE]);
+                    face[newh] = f;
+                    faceOuter[f] = newh;
+                    next[h] = newh;
+                    prev[newh] = h;
+                    next[newh] = nextE;
+                    prev[nextE] = newh;
+
+                    face[newhTwin] = face[prevE];
+                    faceOuter[face[newhTwin]] = newhTwin;
+                    prev[newhTwin] = prevE;
+                    next[prevE] = newhTwin;
+                    next[newhTwin] = nexth;
+                    prev[nexth] = newhTwin;
+                    twin[newhTwin] = newh;
+                    twin[newh] = newhTwin;
+
+                    if (!intersection.near(end)) {
+                        f = addFace(hTwin, faceCount);
+                    }
+                    else { // reached the boundary
+                        f = face[twin[nexth]];
+                        next[twin[nexth]] = hTwin;
+                        prev[hTwin] = twin[nexth];
+                        addExternalEdge(nexth);
+                    }
+
+                    prevE = twin[nexth];
+                    h = hTwin;
+                }
+                else {
+                    if (same(origin[h], i)) {h = prev[h];}
+
+                    if (!i.near(originV) || passOg == 0) {
+                        int newh = addEdge(ip);
+                        int newhTwin = addEdge(origin[nextE]);
+                        prev[newhTwin] = prevE;
+                        face[newhTwin] = face[prevE];
+                        faceOuter[face[newhTwin]] = newhTwin;
+                        next[prevE] = newhTwin;
+                        next[newhTwin] = next[h];
+                        prev[next[h]] = newhTwin;
+                        twin[newhTwin] = newh;
+                        twin[newh] = newhTwin;
+
+                        face[newh] = f;
+                        faceOuter[f] = newh;
+                        next[h] = newh;
+                        prev[newh] = h;
+                        next[newh] = nextE;
+                        prev[nextE] = newh;
+                    }
+
+                    h = twin[prev[twin[h]]];
+
+                    if (!i.near(end) && !i.near(originV)) {
+                        f = addFace(h, faceCount);
+                    }
+                    else {
+                        f = face[h];
+                    }
+                    prevE = prev[h];
+                }
+
+                nextE = h;
+            }
+
+            face[h] = f;
+            h = next[h];
+        }
+    }
+
+    // A Vertex for every point, the polygon's own ones for its vertices
+    Vertex[] points() {
+        Vertex[] points = new Vertex[pointCount];
+        for (int p = 0; p < pointCount; p++) {
+            points[p] = p < polygon.length ? polygon[p] : new Vertex(px[p], py[p]);
+        }
+        return points;
+    }
+}
+
+
+// Point location over the faces of a DCEL after computeVisibility (and before mergeFaces, which destroys them), by slab decomposition: the x of the vertices split the plane into vertical
+// slabs, and the edges that cross a slab never cross each other inside it, so each slab keeps them sorted by y. A query finds its slab and then
+// the highest edge below the point with two binary searches, O(log n), and the point is in the face above that edge
+class PointLocator {
+    private final double[] slabX; // sorted distinct x of the edge ends, slab i is [slabX[i], slabX[i+1])
+    private final int[] slabStart; // the edges of slab i are slabEdges[slabStart[i] .. slabStart[i+1]-1], lowest first
+    private final int[] slabEdges;
+    private final double[] ax, ay, bx, by; // per edge that is not vertical: its left and right ends
+    private final int[] aboveWalls; // per edge: the walls crossed to reach the face above it, -1 if it is outside the polygon
+
+    public PointLocator(DCEL dcel) {
+        IdentityHashMap<HalfEdge, Face> cycleOf = new IdentityHashMap<>(); // as in computeVisibility, the face cycles are more reliable than incidentFace
+        boolean[] left = new boolean[dcel.faces.size()]; // per face: whether it is on the left of its half-edges
+        for (Face f : dcel.faces) {
+            HalfEdge e = f.outerComponent;
+            double area = 0;
+            do {
+                cycleOf.put(e, f);
+                area += e.origin.x * e.next.origin.y - e.next.origin.x * e.origin.y;
+                e = e.next;
+            } while (e != f.outerComponent);
+            left[f.id] = f.counter == 0 ? area < 0 : area > 0; // faces inside are on the left of a ccw cycle, the one outside of a cw one
+        }
+
+        List<HalfEdge> edges = new ArrayList<>(); // the half-edge going right of each edge
+        for (HalfEdge e : dcel.halfEdges) {
+            if (e.origin.x < e.twin.origin.x) {edges.add(e);}
+        }
+        int m = edges.size();
+        ax = new double[m];
+        ay = new double[m];
+        bx = new double[m];
+        by = new double[m];
+        aboveWalls = new int[m];
+        double[] xs = new double[2 * m];
+        for (int i = 0; i < m; i++) {
+            HalfEdge e = edges.get(i);
+            ax[i] = e.origin.x;
+            ay[i] = e.origin.y;
+            bx[i] = e.twin.origin.x;
+            by[i] = e.twin.origin.y;
+            Face f = cycleOf.getOrDefault(e, e.incidentFace);
+            if (!left[f.id]) { // the polygon was given in cw order: the face of the half-edge is below it
+                f = cycleOf.getOrDefault(e.twin, e.twin.incidentFace);
+            }
+            aboveWalls[i] = f.counter == 0 ? -1 : f.modem;
+            xs[2 * i] = ax[i];
+            xs[2 * i + 1] = bx[i];
+        }
+        Arrays.sort(xs);
+        int distinct = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (distinct == 0 || xs[i] != xs[distinct - 1]) {xs[distinct++] = xs[i];}
+        }
+        slabX = Arrays.copyOf(xs, distinct);
+
+        int slabs = Math.max(distinct - 1, 0);
+        int[] crossing = new int[slabs + 1]; // edges crossing each slab: +1 at the slab of the left end, -1 at the one of the right end
+        for (int i = 0; i < m; i++) {
+            crossing[slab(ax[i])]++;
+            crossing[slab(bx[i])]--;
+        }
+        slabStart = new int[slabs + 1];
+        for (int s = 0, open = 0; s < slabs; s++) {
+            open += crossing[s];
+            slabStart[s + 1] = slabStart[s] + open;
+        }
+        slabEdges = new int[slabStart[slabs]];
+        int[] fill = Arrays.copyOf(slabStart, slabs);
+        for (int i = 0; i < m; i++) {
+            for (int s = slab(ax[i]); s < slab(bx[i]); s++) {
+                slabEdges[fill[s]++] = i;
+            }
+        }
+        for (int s = 0; s < slabs; s++) {
+            double mid = (slabX[s] + slabX[s + 1]) / 2;
+            Integer[] order = new Integer[slabStart[s + 1] - slabStart[s]];
+            for (int i = 0; i < order.length; i++) {order[i] = slabEdges[slabStart[s] + i];}
+            Arrays.sort(order, (e1, e2) -> Double.compare(yAt(e1, mid), yAt(e2, mid)));
+            for (int i = 0; i < order.length; i++) {slabEdges[slabStart[s] + i] = order[i];}
+        }
+    }
+
+    // Index of the slab that starts at x (x must be one of slabX)
+    private int slab(double x) {
+        return Arrays.binarySearch(slabX, x);
+    }
+
+    private double yAt(int e, double x) {
+        return ay[e] + (x - ax[e]) * (by[e] - ay[e]) / (bx[e] - ax[e]);
+    }
+
+    // Number of walls between the guard and (x, y), or -1 if the point is outside the polygon (points on an edge belong to the face above it)
+    public int wallsAt(double x, double y) {
+        int lo = 0, hi = slabX.length; // first slab boundary greater than x
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (slabX[mid] <= x) {lo = mid + 1;}
+            else {hi = mid;}
+        }
+        int s = lo - 1;
+        if (s < 0 || s >= slabStart.length - 1) return -1;
+
+        lo = slabStart[s];
+        hi = slabStart[s + 1]; // first edge above the point
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (yAt(slabEdges[mid], x) <= y) {lo = mid + 1;}
+            else {hi = mid;}
+        }
+        return lo == slabStart[s] ? -1 : aboveWalls[slabEdges[lo - 1]];
+    }
+
+    // Number of (edge, slab) pairs stored, the size of the structure
+    public int size() {
+        return slabEdges.length;
+    }
+}
+
+
+// Evaluates several guards at once against the same partitioned polygon, each guard in a separate task of a fork-join pool.
+// Every task works on its own DCEL instantiated from the shared snapshot, as addPartition and mergeFaces modify the DCEL in place
+class MultiGuardEvaluator {
+    private final DCELSnapshot base;
+    boolean exact; // see DCEL.exact
+
+    public MultiGuardEvaluator(DCELSnapshot base) {
+        this.base = base;
+    }
+
+    static class GuardResult {
+        final Vertex guard;
+        final List<List<List<Vertex>>> regions; // for each k, the illuminated regions
+        final double[] area; // for each k, the total area of the illuminated regions
+        final Exception error; // set if the evaluation of this guard failed
+
+        GuardResult(Vertex guard, List<List<List<Vertex>>> regions, double[] area, Exception error) {
+            this.guard = guard;
+            this.regions = regions;
+            this.area = area;
+            this.error = error;
+        }
+    }
+
+    // Returns the results in the same order as the guards
+    public List<GuardResult> evaluate(List<Vertex> guards, int[] ks, int parallelism) throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> guards.parallelStream().map(g -> evaluate(g, ks)).collect(Collectors.toList())).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public GuardResult evaluate(Vertex guard, int[] ks) {
+        try {
+            DCEL dcel = base.instantiate();
+            dcel.verbose = false;
+            dcel.exact = exact;
+            dcel.computeVisibility(guard);
+            DCELSnapshot visible = new DCELSnapshot(dcel); // mergeFaces destroys the faces, so each k starts from the same visibility result
+
+            List<List<List<Vertex>>> regions = new ArrayList<>();
+            double[] area = new double[ks.length];
+            for (int i = 0; i < ks.length; i++) {
+                List<List<Vertex>> r = visible.instantiate().mergeRegions(ks[i]);
+                for (List<Vertex> region : r) {
+                    area[i] += DCEL.area(region);
+                }
+                regions.add(r);
+            }
+            return new GuardResult(guard, regions, area, null);
+        } catch (RuntimeException e) {
+            return new GuardResult(guard, null, null, e);
+        }
+    }
+}
+
+
+
+// Chooses guards among candidate points (the vertices of the polygon, or any guards TAA_proj.guardAt gives) with the lazy greedy algorithm:
+// each step adds the candidate that illuminates the most area not illuminated yet, measured on the faces computeVisibility(guards) gives.
+// The area illuminated by a set of guards grows by less when it is added to a larger set (it is submodular), so the gain of a candidate in
+// an earlier step bounds its gain now, and only the candidates whose old gain is the largest are evaluated again, as many at a time as
+// there are threads
+class GuardPlacer {
+    private final DCELSnapshot base;
+    private final int k;
+    boolean exact; // see DCEL.exact
+
+    public GuardPlacer(DCELSnapshot base, int k) {
+        this.base = base;
+        this.k = k;
+    }
+
+    static class Step {
+        final Vertex guard;
+        final double gain; // area this guard added
+        final double covered; // area illuminated by the guards chosen up to this one
+        final int evaluations; // sets of guards evaluated up to this one
+
+        Step(Vertex guard, double gain, double covered, int evaluations) {
+            this.guard = guard;
+            this.gain = gain;
+            this.covered = covered;
+            this.evaluations = evaluations;
+        }
+    }
+
+    // Adds guards until target area is illuminated, budget guards are chosen (if budget > 0) or no candidate illuminates anything more
+    public List<Step> place(List<Vertex> candidates, int budget, double target, int parallelism) throws InterruptedException, ExecutionException {
+        int n = candidates.size();
+        double[] gain = new double[n];
+        int[] evaluatedAt = new int[n]; // number of guards chosen when gain was computed
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> gain[a] != gain[b] ? Double.compare(gain[b], gain[a]) : Integer.compare(a, b));
+        List<Vertex> chosen = new ArrayList<>();
+        List<Step> steps = new ArrayList<>();
+        double covered = 0, epsilon = 1e-9 * Math.max(target, 1);
+        int evaluations = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Integer> pending = new ArrayList<>(); // candidates to evaluate against the guards chosen so far
+            for (int c = 0; c < n; c++) {
+                pending.add(c);
+            }
+            while (true) {
+                double before = covered;
+                List<Integer> batch = pending;
+                double[] gains = pool.submit(() -> batch.parallelStream().mapToDouble(c -> coverage(chosen, candidates.get(c)) - before).toArray()).get();
+                evaluations += batch.size();
+                for (int i = 0; i < batch.size(); i++) {
+                    int c = batch.get(i);
+                    if (Double.isNaN(gains[i])) continue; // failed, see coverage
+                    gain[c] = gains[i];
+                    evaluatedAt[c] = chosen.size();
+                    queue.add(c);
+                }
+
+                pending = new ArrayList<>();
+                while (!queue.isEmpty() && evaluatedAt[queue.peek()] == chosen.size()) { // the best bound is up to date, so it is the best gain
+                    int best = queue.poll();
+                    if (gain[best] <= epsilon) return steps;
+                    chosen.add(candidates.get(best));
+                    covered += gain[best];
+                    steps.add(new Step(candidates.get(best), gain[best], covered, evaluations));
+                    if (covered >= target - epsilon || chosen.size() == budget) return steps;
+                }
+                while (!queue.isEmpty() && pending.size() < parallelism && evaluatedAt[queue.peek()] < chosen.size()) {
+                    pending.add(queue.poll());
+                }
+                if (pending.isEmpty()) return steps;
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Area illuminated by the chosen guards and the candidate together, NaN if the engine fails on them
+    private double coverage(List<Vertex> chosen, Vertex candidate) {
+        List<Vertex> guards = new ArrayList<>(chosen);
+        guards.add(candidate);
+        try {
+            DCEL dcel = base.instantiate();
+            dcel.verbose = false;
+            dcel.exact = exact;
+            int[] server = dcel.computeVisibility(guards);
+            double area = 0;
+            for (double a : dcel.servedAreas(k, server, guards.size())) {
+                area += a;
+            }
+            return area;
+        } catch (RuntimeException e) {
+            System.err.println("Skipping guard (" + candidate.x + "," + candidate.y + "): " + e);
+            return Double.NaN;
+        }
+    }
+}
+
+// Answers illumination queries over HTTP on the loopback interface, so many small queries share one JVM (no startup nor cold JIT per query).
+// GET /query?polygon=<polygon name>&x=<x>&y=<y>&k=<k> returns the same text the batch mode writes for the query "x y k". Polygon names are
+// files of one directory, and nothing outside it is ever opened. Each polygon is read and partitioned on its first query (or when preloaded)
+// and kept as a snapshot; the queries run in parallel, each on its own DCEL. Polygons, answers and the visibility of each guard (the DCEL
+// after computeVisibility, with the number of walls to every face, from which any other k for the same guard only needs mergeFaces) are
+// kept in bounded caches. GET /stats returns the hits and misses of the three caches
+class QueryServer {
+    // A query the client got wrong (missing or invalid parameters, a name that is not a plain file name, a guard outside the polygon, a
+    // file that is not a polygon), answered with status 400 and the message. Any other exception is a failure of the server
+    static class BadQueryException extends IllegalArgumentException {
+        BadQueryException(String message) {
+            super(message);
+        }
+    }
+
+    static class Polygon {
+        final Vertex[] vertices;
+        final DCELSnapshot base;
+        final boolean exact; // see DCEL.exact
+        final long fingerprint; // results are shared by every file with the same polygon
+
+        Polygon(Vertex[] vertices, DCELSnapshot base, boolean exact) {
+            this.vertices = vertices;
+            this.base = base;
+            this.exact = exact;
+            this.fingerprint = PartitionCache.fingerprint(vertices);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Path directory; // where the polygon files are
+    private final LruCache<String, Polygon> polygons; // by the name used in the queries
+    // Polygons being read, by name: the queries for one of them wait for the query that reads it, so that it is not partitioned twice, and
+    // the queries for any other polygon go on
+    private final ConcurrentHashMap<String, CompletableFuture<Polygon>> loading = new ConcurrentHashMap<>();
+    private final LruCache<String, String> results; // by "fingerprint x y k"
+    private final LruCache<String, DCELSnapshot> visibilities; // by "fingerprint x y"
+
+    // cacheBytes is shared by the three caches, a third each; the sizes of the entries are estimates
+    public QueryServer(int port, int threads, long cacheBytes, Path directory) throws IOException {
+        this.directory = directory;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/query", this::handleQuery);
+        server.createContext("/stats", this::handleStats);
+        polygons = new LruCache<>(cacheBytes / 3, polygon -> 96L * polygon.base.halfEdgeCount() + 32L * polygon.vertices.length);
+        results = new LruCache<>(cacheBytes / 3, result -> 2L * result.length() + 64);
+        visibilities = new LruCache<>(cacheBytes / 3, visible -> 96L * visible.halfEdgeCount()); // 4 ints and a vertex per half-edge, plus faces
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    // The polygon of the file with that name in the directory, read and partitioned when it is not in the cache
+    public Polygon polygon(String name) throws IOException {
+        Path file = file(name);
+        Polygon polygon = polygons.get(name);
+        if (polygon != null) return polygon;
+
+        CompletableFuture<Polygon> mine = new CompletableFuture<>();
+        CompletableFuture<Polygon> pending = loading.computeIfAbsent(name, n -> mine);
+        if (pending != mine) { // another query is reading it
+            try {
+                return pending.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while polygon " + name + " was read");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                throw new IOException(e.getCause());
+            }
+        }
+
+        try {
+            polygon = polygons.peek(name); // a query that was reading it may have finished meanwhile
+            if (polygon == null) {
+                polygon = readPolygon(name, file);
+                polygons.put(name, polygon);
+            }
+            mine.complete(polygon);
+            return polygon;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(name); // after the put, so that a query that does not find it here finds it in the cache
+        }
+    }
+
+    private static Polygon readPolygon(String name, Path file) throws IOException {
+        if (!Files.isRegularFile(file)) throw new FileNotFoundException(name);
+        Vertex[] vertices;
+        try {
+            vertices = TAA_proj.readVertices(new NumberReader(file.toString()));
+        } catch (RuntimeException e) { // the error would show what the file holds, which is not for the client
+            throw new BadQueryException("Polygon " + name + " is not a polygon file");
+        }
+        return new Polygon(vertices, TAA_proj.partitionSnapshot(vertices, new Metrics()), TAA_proj.exactFor(vertices));
+    }
+
+    // The file of a polygon name: only plain file names are accepted, so that no query reaches a file outside the directory
+    private Path file(String name) {
+        if (name.isEmpty() || name.equals(".") || name.equals("..") || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0) {
+            throw new BadQueryException("Invalid polygon name " + name + ", it must be the name of a file in the polygon directory");
+        }
+        Path file = directory.resolve(name).normalize();
+        if (!directory.equals(file.getParent())) { // e.g. an absolute path on Windows
+            throw new BadQueryException("Invalid polygon name " + name + ", it must be the name of a file in the polygon directory");
+        }
+        return file;
+    }
 
-                    if (!i.equals(end) && !i.equals(origin)) {
-                        f = new Face(h, faces.size());
-                        addFace(f);
-                    }
-                    else {
-                        f = h.incidentFace;
-                    }
-                    prev = h.prev;
-                }
+    // The "x y k" line and the illuminated regions, as in batch mode
+    public String answer(String name, double x, double y, int k) throws IOException {
+        Polygon polygon = polygon(name);
+        Vertex guard = TAA_proj.guardAt(polygon.vertices, x, y);
+        if (guard == null || k % 2 != 0) {
+            throw new BadQueryException("The guard must be inside the polygon and k must be even");
+        }
 
-                next = h;
-            }
+        String key = polygon.fingerprint + " " + guard.x + " " + guard.y;
+        String cached = results.get(key + " " + k);
+        if (cached != null) return cached;
 
-            h.incidentFace = f;
-            h = h.next;
+        DCELSnapshot visible = visibilities.get(key);
+        if (visible == null) {
+            DCEL dcel = polygon.base.instantiate();
+            dcel.verbose = false;
+            dcel.exact = polygon.exact;
+            dcel.computeVisibility(guard);
+            visible = new DCELSnapshot(dcel);
+            visibilities.put(key, visible);
         }
+
+        StringWriter result = new StringWriter();
+        DCEL dcel = visible.instantiate(); // mergeFaces destroys the faces, the snapshot stays for the next k
+        dcel.verbose = false;
+        result.write(guard.x + " " + guard.y + " " + k + "\n");
+        dcel.mergeFaces(k, guard, result);
+        results.put(key + " " + k, result.toString());
+        return result.toString();
     }
 
-    public void computeVisibility(Vertex guard) {
+    private void handleQuery(HttpExchange exchange) throws IOException {
+        int status = 200;
+        String body;
+        try {
+            Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            body = answer(parameter(parameters, "polygon"), number(parameters, "x"), number(parameters, "y"), integer(parameters, "k"));
+        } catch (FileNotFoundException e) {
+            status = 404;
+            body = "No polygon " + e.getMessage() + "\n";
+        } catch (BadQueryException e) {
+            status = 400;
+            body = e.getMessage() + "\n";
+        } catch (IOException | RuntimeException e) { // the message may name files of the server, so it only goes to its standard error
+            System.err.println("Query " + exchange.getRequestURI() + " failed: " + e);
+            status = 500;
+            body = "Query failed\n";
+        }
 
-        List<Vertex> endIntersect = new ArrayList<>();
-        List<Vertex[]> partitions = new ArrayList<>();
+        respond(exchange, status, "text/plain", body);
+    }
 
-        for (Vertex v : externalVertices) {
+    private void handleStats(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "application/json", "{\"polygons\":" + polygons.toJson() + ",\"results\":" + results.toJson()
+                + ",\"visibilities\":" + visibilities.toJson() + "}\n");
+    }
 
-            List<Vertex> intersections = new ArrayList<>();
-            if (!v.equals(guard)) { 
-                HalfEdge start = null;
-                for (HalfEdge edge : externalEdges) {
-                    Vertex i = line_intersect(guard, v, edge.origin, edge.next.origin);
-                    if (i!=null && i.equals(v)) {
-                        start = edge;
-                    }
-                    else if (i != null && ((guard.y > v.y && i.y < v.y) || (guard.y < v.y && i.y > v.y))) { //intersecao com uma parede
-                        intersections.add(i);
+    private static void respond(HttpExchange exchange, int status, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
 
-                    }
-                    else if (i != null && guard.y == i.y) {
-                        if ((guard.x > v.x && i.x < v.x) || (guard.x < v.x && i.x > v.x)) {
-                            intersections.add(i);
-                        }
-                    }
-                }
-                Set<double[]> numIntersect = new HashSet<double[]>(); 
-                HalfEdge edge = start.next;
-                while (edge != start) {
-                    Vertex i = line_intersect(guard, v, edge.origin, edge.next.origin);
-                    if (i != null) {
-                        double[] vCoord = {i.x,i.y};
-                        numIntersect.add(vCoord);
-                    }
-                    edge = edge.next;
-                }
-                intersections.add(v);
+    private static Map<String, String> parameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            try {
+                parameters.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) { // a bad % escape
+                throw new BadQueryException("Malformed query string");
             }
+        }
+        return parameters;
+    }
 
-            Collections.sort(intersections, new VertexComparator(guard)); // sorts the faces in descending order relative to their distance to the guard vertex
-            if (intersections.size() > 1 && intersections.get(0).x == intersections.get(1).x && intersections.get(0).y == intersections.get(1).y) {
-                intersections.remove(0); // remove repetitions caused by begining at a vertex of the polygon
-            } 
+    private static String parameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) throw new BadQueryException("Missing parameter " + name);
+        return value;
+    }
 
-            for (int i=0; i<intersections.size()-1; i++) {
-                Vertex i1 = intersections.get(i);
-                Vertex i2 = intersections.get(i+1);
-                boolean edgeExists = false;
+    private static double number(Map<String, String> parameters, String name) {
+        try {
+            return Double.parseDouble(parameter(parameters, name));
+        } catch (NumberFormatException e) {
+            throw new BadQueryException("Parameter " + name + " must be a number");
+        }
+    }
 
-                for (Vertex[] vList : partitions) {
-                    if ((vList[0].equals(i1) && vList[1].equals(i2)) || (vList[0].equals(i2) && vList[1].equals(i1))) {
-                        edgeExists = true; //check if partition was already added
-                        break;
-                    }
-                }
+    private static int integer(Map<String, String> parameters, String name) {
+        try {
+            return Integer.parseInt(parameter(parameters, name));
+        } catch (NumberFormatException e) {
+            throw new BadQueryException("Parameter " + name + " must be an integer");
+        }
+    }
+}
 
-                if (v.x == guard.x || v.y == guard.y) { // vertical or horizontal partitions
-                    if (i1.equals(v) || i2.equals(v)) {
-                        edgeExists = true;
-                            break;
-                    }
 
-                    for (HalfEdge e : halfEdges) { 
-                        if (e.origin.equals(i2) && e.next.origin.equals(i1)) { //check if edge already exists
-                            edgeExists = true;
-                            break;
-                        }
-    
-                    }
 
-                    for (Vertex vert : externalVertices) { 
-                        if (i2.equals(vert) || i1.equals(vert)) {
-                            edgeExists = true;
-                            break;
-                        }
-    
-                    }
-                }
+// Map bounded by the total weight of its values (e.g. their size in bytes), which drops the least recently used entries when it is full.
+// It counts hits, misses and evictions, and can be shared by several threads
+class LruCache<K, V> {
+    private final long capacity;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true); // in access order, least recent first
+    private long weight, hits, misses, evictions;
+
+    public LruCache(long capacity, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
 
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {misses++;} else {hits++;}
+        return value;
+    }
 
-                boolean edgeInPoly = segInPoly(i2, i1);
+    // Same as get, but not counted as a hit or a miss
+    public synchronized V peek(K key) {
+        return entries.get(key);
+    }
 
-                if (!i1.equals(i2) && !edgeExists && edgeInPoly) {
-                    addPartition(i2, i1);
-                    Vertex[] p = {i1,i2};
-                    partitions.add(p);
-                    endIntersect.add(i1);
-                }
-            }
+    // A value heavier than the whole cache is not kept
+    public synchronized void put(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        if (w > capacity) return;
+        V old = entries.put(key, value);
+        if (old != null) {weight -= weigher.applyAsLong(old);}
+        weight += w;
+
+        Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator();
+        while (weight > capacity) {
+            Map.Entry<K, V> eldest = it.next();
+            weight -= weigher.applyAsLong(eldest.getValue());
+            it.remove();
+            evictions++;
         }
-        
+    }
 
-        for (Face f : faces) {
-            if (f.counter != 0) {
-                f.computeCentroid(); //calcular direito centroid
-                Vertex c = f.centroid;
+    public synchronized String toJson() {
+        return "{\"entries\":" + entries.size() + ",\"weight\":" + weight + ",\"capacity\":" + capacity
+            + ",\"hits\":" + hits + ",\"misses\":" + misses + ",\"evictions\":" + evictions + "}";
+    }
+}
 
+// Reads the whitespace separated numbers of a polygon, partition or query file. The file is memory mapped and numbers are parsed straight
+// from its bytes, as the regular expressions of java.util.Scanner cost about as much as the geometry on large polygons
+class NumberReader {
+    private final MappedByteBuffer buffer;
+    private int pos;
+
+    public NumberReader(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(path);
+        }
+    }
 
-                List<Vertex> intersections = new ArrayList<>();
-                for (HalfEdge e : externalEdges) {
-                    Vertex i = seg_intersect(guard, c, e.origin, e.next.origin);
-                    if (i  != null && !i.equals(guard) && !i.equals(c)  && !intersections.contains(i)) {
-                        intersections.add(i);
-                    }
-                }
+    // Whether a number follows (like Scanner.hasNextDouble, anything else ends the input)
+    public boolean hasNext() {
+        while (pos < buffer.limit() && buffer.get(pos) <= ' ') {pos++;}
+        if (pos == buffer.limit()) return false;
+        byte c = buffer.get(pos);
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
 
-                f.modem = intersections.size();
-                if (f.modem%2!=0) {f.modem++;}
+    public double nextDouble() {
+        int start = token();
+        long value = 0;
+        boolean negative = false;
+        int i = start;
+        if (buffer.get(i) == '-' || buffer.get(i) == '+') {negative = buffer.get(i++) == '-';}
+        if (pos - i > 0 && pos - i <= 18) { // integers are converted exactly, anything else goes through Double.parseDouble
+            for (; i < pos; i++) {
+                byte c = buffer.get(i);
+                if (c < '0' || c > '9') break;
+                value = value * 10 + (c - '0');
             }
-            else {f.modem = 10000000;}
+            if (i == pos) return negative ? -(double) value : value;
         }
+        return Double.parseDouble(text(start));
     }
 
-    public void mergeFaces(int k, Vertex guard, FileWriter myWriter) throws Exception {
-        List<Face> modemFaces = new ArrayList<>();
+    public int nextInt() {
+        return Integer.parseInt(text(token()));
+    }
 
-        for (Face f : faces) {
-            if (f.modem <= k) {
-               modemFaces.add(f); // faces com o modem pedido
-            }
+    // Skips to the next token and returns where it starts, leaving pos at its end
+    private int token() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
         }
+        int start = pos;
+        while (pos < buffer.limit() && buffer.get(pos) > ' ') {pos++;}
+        return start;
+    }
 
-        if (modemFaces.size() == 0) {
-            System.out.println("No regions have this visibility");
-            return;
-        }
+    private String text(int start) {
+        byte[] bytes = new byte[pos - start];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
 
-        Collections.sort(modemFaces); // começar da face mais a cima (ou mais à direita em caso de empate) para garantir que tenho pelo menos 1 fronteira com uma face de modem > k
-        int region = 0;
-        List<Vertex> finalVisRegion = new ArrayList<>();
-        List<Integer> finalRegionSizes = new ArrayList<>();
 
-        while (modemFaces.size() != 0) {
-            Face startF = modemFaces.get(0);
-            modemFaces.remove(0);
+// Builds the H/V partition of an orthogonal polygon: every reflex vertex extends both of its edges into the polygon until they hit its boundary.
+// Two sweeps (one for each orientation) keep the edges perpendicular to the extensions ordered in a tree, so all chords are found in O(n log n)
+class HVPartitioner {
 
-            HalfEdge startE = startF.outerComponent;
-            HalfEdge edge = startE.next;
-            boolean isBarrier = false;
-            if (startE.twin.incidentFace.modem > k) {
-                isBarrier = true;
-            }
+    // The chords, each one from a reflex vertex to the point where its extension hits the boundary (horizontal ones first)
+    public static List<Vertex[]> chords(Vertex[] polygon) {
+        List<Vertex[]> chords = new ArrayList<>();
+        extend(polygon, false, chords);
+        extend(polygon, true, chords);
+        return chords;
+    }
 
-            while (isBarrier == false && edge != startE) {
-                if (edge.incidentFace != startF) break;
-                if (edge.twin.incidentFace.modem > k) { // encontrar uma tal fronteira para iniciar o algoritmo
-                    isBarrier = true;
-                    startE = edge;
-                    break;
-                }
-                edge = edge.next;
+    // Finds the chords of one orientation, horizontal ones or (with transposed) vertical ones
+    private static void extend(Vertex[] polygon, boolean transposed, List<Vertex[]> chords) {
+        int n = polygon.length;
+        double[] x = new double[n], y = new double[n]; // coordinates along and across the chords
+        double area = 0;
+        for (int i = 0; i < n; i++) {
+            x[i] = transposed ? polygon[i].y : polygon[i].x;
+            y[i] = transposed ? polygon[i].x : polygon[i].y;
+        }
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            area += x[i] * y[j] - x[j] * y[i];
+        }
+
+        List<double[]> walls = new ArrayList<>(); // edges across the chords: {x, lowest y, highest y}
+        List<double[]> starts = new ArrayList<>(); // extensions: {x, y, direction, vertex}
+        for (int i = 0; i < n; i++) {
+            int prev = (i + n - 1) % n;
+            int next = (i + 1) % n;
+            if (x[i] == x[next] && y[i] != y[next]) {
+                walls.add(new double[] {x[i], Math.min(y[i], y[next]), Math.max(y[i], y[next])});
+            }
+            double turn = (x[i] - x[prev]) * (y[next] - y[i]) - (y[i] - y[prev]) * (x[next] - x[i]);
+            if (turn * area >= 0) continue; // not a reflex vertex
+            int other = y[prev] == y[i] ? prev : next; // the other end of the edge along the chords
+            if (y[other] != y[i] || x[other] == x[i]) continue;
+            starts.add(new double[] {x[i], y[i], Math.signum(x[i] - x[other]), i});
+        }
+        walls.sort((w1, w2) -> Double.compare(w1[1], w2[1]));
+        starts.sort((s1, s2) -> Double.compare(s1[1], s2[1]));
+        List<double[]> byTop = new ArrayList<>(walls);
+        byTop.sort((w1, w2) -> Double.compare(w1[2], w2[2]));
+
+        TreeMap<Double, Integer> active = new TreeMap<>(); // x of the walls that cross (or touch) the current line, with their multiplicity
+        int added = 0, removed = 0;
+        for (double[] s : starts) {
+            while (added < walls.size() && walls.get(added)[1] <= s[1]) {
+                active.merge(walls.get(added++)[0], 1, Integer::sum);
+            }
+            while (removed < byTop.size() && byTop.get(removed)[2] < s[1]) {
+                active.merge(byTop.get(removed++)[0], -1, (c, d) -> c + d == 0 ? null : c + d);
             }
+            Double hit = s[2] < 0 ? active.lowerKey(s[0]) : active.higherKey(s[0]);
+            if (hit == null) continue;
 
+            Vertex origin = polygon[(int) s[3]];
+            chords.add(new Vertex[] {origin, transposed ? new Vertex(s[1], hit) : new Vertex(hit, s[1])});
+        }
+    }
+}
 
-            if (isBarrier == false) {
-                continue; // se todos os edges forem adjacentes a uma face de modem <= k, descartar (já contabilizado)
-            }
 
-            HalfEdge e = startE.next;
+// Random grid orthogonal polygons, ported from GenPols_RectParts_TAA: permutominoes by Inflate-Cut (swerc_inflate_cut.c, see Tomás and Bajuelos,
+// LNCS 3045, 2004) and polygons with empty grid lines inserted between their edges (expconvert.c). The same seed gives the same polygons
+class PolygonGenerator {
+    private static final int MAX_LINES_PER_STEP = 4; // empty grid lines inserted in a single step of expand
+    private static final int MAX_EMPTY = 30; // upper bound on the number of empty grid lines
 
-            while (e != startE) {
-                if (e.twin.incidentFace.modem <= k) {
-                    modemFaces.remove(e.twin.incidentFace);
-                    e.prev.next = e.twin.next; // alterar apontadores de uma face para a outra (dar merge)
-                    e.prev.incidentFace = startF;
-                    e.twin.next.prev = e.prev;
-                    e.twin.next.incidentFace = startF;
-                    e.next.prev = e.twin.prev;
-                    e.next.incidentFace = startF;
-                    e.twin.prev.next = e.next;
-                    e.twin.prev.incidentFace = startF;
+    private final Random random;
 
-                    HalfEdge rem = e;
-                    e = e.twin.next;
-                    halfEdges.remove(rem.twin); // apagar edges comuns
-                    halfEdges.remove(rem);
-                }
-                else {
-                    e = e.next;
-                }
-                modemFaces.remove(e.incidentFace);
-                e.incidentFace = startF;
-            }
+    private Vert polygon; // ccw, with the edge from polygon to polygon.nxt vertical
+    private List<Integer> rows; // number of cells of the polygon in each row, from y = 1 up
+    private int area;
 
-            List<Vertex> visRegion = new ArrayList<>();
+    private static class Vert {
+        int x, y;
+        Vert nxt, prev;
 
-            visRegion.add(startE.origin);
-            e = startE.next;
-            while(e != startE) {
-                if (visRegion.size() >= 2 && areCollinear(visRegion.get(visRegion.size()-2), visRegion.get(visRegion.size()-1), e.origin)) {
-                    visRegion.remove(visRegion.get(visRegion.size()-1));
-                }
-                visRegion.add(e.origin);
-                e = e.next;
-            }
+        Vert(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
 
-            if (visRegion.size() >= 2 && areCollinear(visRegion.get(visRegion.size()-2), visRegion.get(visRegion.size()-1), visRegion.get(0))) {
-                visRegion.remove(visRegion.get(visRegion.size()-1));
-            }
-            if (visRegion.size() >= 2 && areCollinear(visRegion.get(1), visRegion.get(0), visRegion.get(visRegion.size()-1))) {
-                visRegion.remove(0);
-            }
+    private static class Edge { // the edge from v to v.nxt, on the line x = line (vertical) or y = line (horizontal)
+        final Vert v;
+        final int line;
 
-            int startIndex = 0;
-            Vertex startV = visRegion.get(0); 
-            for (int i=0; i<visRegion.size(); i++) { // just to start the ccw order from the highest leftmost vertex of the region
-                if (visRegion.get(i).x < startV.x) {
-                    startIndex = i;
-                    startV = visRegion.get(i);
-                }
-                else if (visRegion.get(i).x == startV.x && visRegion.get(i).y > startV.y) {
-                    startIndex = i;
-                    startV = visRegion.get(i);
-                }
+        Edge(Vert v, int line) {
+            this.v = v;
+            this.line = line;
+        }
+    }
+
+    public PolygonGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    // A permutomino with n vertices (n even, at least 4) in ccw order, with coordinates from 0 to n/2-1 (as swerc_inflate_cut.c outputs it)
+    public Vertex[] permutomino(int n) {
+        if (n < 4 || n % 2 != 0) {
+            throw new IllegalArgumentException("the number of vertices must be even and at least 4");
+        }
+        square();
+        for (int r = n / 2 - 2; r > 0; r--) {
+            // the cells are tried in random order until one of them can be inflated; the permutation of the cells is drawn lazily, as
+            // usually only its first few elements are needed
+            HashMap<Integer, Integer> swapped = new HashMap<>();
+            int cell = 0;
+            while (true) {
+                if (cell == area) throw new IllegalStateException("no cell of the polygon can be inflated");
+                int k = cell + random.nextInt(area - cell);
+                int chosen = swapped.getOrDefault(k, k + 1);
+                swapped.put(k, swapped.getOrDefault(cell, cell + 1));
+                if (inflateCut(chosen)) break;
+                cell++;
             }
+        }
+
+        Vertex[] result = new Vertex[n];
+        Vert p = polygon;
+        for (int i = 0; i < n; i++, p = p.nxt) {
+            result[i] = new Vertex(p.x - 1, n / 2 - p.y);
+        }
+        return result;
+    }
 
-            finalRegionSizes.add(visRegion.size());
-            region++;
-            System.out.println("\nRegion " + region + ": ");
-            for (int i=0; i<visRegion.size(); i++) {
-                Vertex v = visRegion.get((startIndex + i) % visRegion.size());
-                System.out.println("(" + v.x + "," + v.y + ") ");
-                finalVisRegion.add(v);
+    // Inserts a random number (at most 60) of empty grid lines next to random edges of a permutomino, so that it has no collinear edges left.
+    // Like expconvert.c, the result is in cw order and shifted by (1, 1), the reference used by gridnew.c
+    public Vertex[] expand(Vertex[] permutomino) {
+        int n = permutomino.length;
+        int[] x = new int[n], y = new int[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (int) permutomino[i].x;
+            y[i] = (int) permutomino[i].y;
+        }
+        startAtBottomEdge(x, y);
+
+        int k = 1 + random.nextInt(2 * MAX_EMPTY);
+        while (k != 0) {
+            boolean horizontal = random.nextBoolean();
+            int step = Math.min(k, MAX_LINES_PER_STEP);
+            step = step > 1 ? 1 + random.nextInt(step) : 1;
+            int edge = random.nextInt(n / 2);
+            if (horizontal) {
+                insertGridLines(step, y[2 * edge], y);
             }
+            else {
+                insertGridLines(step, x[2 * edge + 1], x);
+            }
+            k -= step;
+        }
+
+        Vertex[] result = new Vertex[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = new Vertex(x[n - 1 - i] + 1, y[n - 1 - i] + 1);
         }
+        return result;
+    }
 
-        myWriter.write(finalRegionSizes.size() + "\n");
-        for (int i : finalRegionSizes) {
-            myWriter.write(i + "\n");
-            for (int j = 0; j < i; j++) {
-                myWriter.write(finalVisRegion.get(0).x + " " + finalVisRegion.get(0).y + "\n");
-                finalVisRegion.remove(0);
+    // Rotates the vertices so that the first one is the left vertex of the bottom edge, the one from which the ccw order follows that edge
+    private static void startAtBottomEdge(int[] x, int[] y) {
+        int n = x.length;
+        int ymin = y[0], imin = 0;
+        for (int i = 1; i < n; i++) {
+            if (y[i] < ymin) {
+                ymin = y[i];
+                imin = i;
             }
         }
+        if (y[imin] != y[(imin + 1) % n]) { // the first vertex at ymin is the right one of the edge, which can only happen when it is y[0]
+            imin = (imin + n - 1) % n;
+        }
+        int[] ax = new int[n], ay = new int[n];
+        for (int j = 0; j < n; j++) {
+            ax[j] = x[(imin + j) % n];
+            ay[j] = y[(imin + j) % n];
+        }
+        System.arraycopy(ax, 0, x, 0, n);
+        System.arraycopy(ay, 0, y, 0, n);
     }
 
+    // Shifts every coordinate >= a by k
+    private static void insertGridLines(int k, int a, int[] coords) {
+        if (a == 0) a = 1;
+        for (int i = 0; i < coords.length; i++) {
+            if (coords[i] >= a) coords[i] += k;
+        }
+    }
 
-//-------------------------------------------------------- AUXILIARY CODE TO CALCULATE IMPORTANT VALUES -------------------------------------------------------- //
+    private void square() {
+        Vert a = new Vert(1, 1), b = new Vert(1, 2), c = new Vert(2, 2), d = new Vert(2, 1);
+        a.nxt = b; b.nxt = c; c.nxt = d; d.nxt = a;
+        a.prev = d; b.prev = a; c.prev = b; d.prev = c;
+        polygon = a;
+        rows = new ArrayList<>();
+        rows.add(1);
+        area = 1;
+    }
 
+    // One Inflate-Cut step on the given cell (1 to area, row by row), false if no rectangle of the cell can be cut
+    private boolean inflateCut(int cell) {
+        // find the row and column of the cell and the vertical edges to its left and right
+        int count = 0, i = 1, row = 0;
+        while (count + rows.get(row) < cell) {
+            count += rows.get(row++);
+            i++;
+        }
+        List<Edge> vertical = crossing(polygon, i, false);
+        int left = 0;
+        while (count + vertical.get(left + 1).line - vertical.get(left).line < cell) {
+            count += vertical.get(left + 1).line - vertical.get(left).line;
+            left += 2;
+        }
+        int j = vertical.get(left).line + cell - count - 1;
 
+        // and the horizontal edges above and below it
+        List<Edge> horizontal = crossing(polygon.nxt, j, true);
+        int up = 0;
+        while (horizontal.get(up + 1).line < i) {up += 2;}
 
-    public void iterateThroughEdges() { // this function was used to test the code in earlier stages
-        System.out.println("Pontos de cada edge:");
-        for (int i=0; i<halfEdges.size()/2; i++) {
-            HalfEdge h = halfEdges.get(2*i);
-            HalfEdge h1 = null;
+        Vert w = selectRectangle(vertical.get(left), vertical.get(left + 1), horizontal.get(up), horizontal.get(up + 1), i, j);
+        if (w == null) return false;
 
-            System.out.println("\n" + (i+1) + "th cycle");
+        inflate(i, j, row, horizontal);
+        cutRectangle(w, i, j);
+        return true;
+    }
 
-            while (h != h1) { 
-                h1 = halfEdges.get(2*i);
-                System.out.println("Origin: (" + h.origin.x + ", " + h.origin.y + ")");
-                System.out.println("Orgin face: f" + h.incidentFace.counter);
-                System.out.println("Twin Origin: (" + h.twin.origin.x + ", " + h.twin.origin.y + ")");
-                System.out.println("Twin face: f" + h.twin.incidentFace.counter);
-                h = h.next;
+    // The edges (every other one, starting at first) that cross the line x = c (byX) or y = c, sorted by their own line
+    private static List<Edge> crossing(Vert first, int c, boolean byX) {
+        List<Edge> edges = new ArrayList<>();
+        Vert v = first;
+        do {
+            int a = byX ? v.x : v.y;
+            int b = byX ? v.nxt.x : v.nxt.y;
+            if ((a > c && b <= c) || (a <= c && b > c)) {
+                edges.add(new Edge(v, byX ? v.y : v.x));
             }
-        }
+            v = v.nxt.nxt;
+        } while (v != first);
+        Collections.reverse(edges); // swerc_inflate_cut.c puts later edges first among edges on the same line
+        edges.sort((e1, e2) -> Integer.compare(e1.line, e2.line));
+        return edges;
     }
 
-    public Vertex seg_intersect(Vertex v1, Vertex v2, Vertex v3, Vertex v4) { //check if two segments intersect
-        double m1 = (v2.y - v1.y) / (v2.x - v1.x);
-        double m2 = (v4.y - v3.y) / (v4.x - v3.x);
-        double b1 = v2.y - m1 * v2.x;
-        double b2 = v4.y - m2 * v4.x;
-
-        BigDecimal max_x = new BigDecimal(Math.min(Math.max(v1.x,v2.x), Math.max(v3.x,v4.x)));
-        BigDecimal max_y = new BigDecimal(Math.min(Math.max(v1.y,v2.y), Math.max(v3.y,v4.y)));
-        BigDecimal min_x = new BigDecimal(Math.max(Math.min(v1.x,v2.x), Math.min(v3.x,v4.x)));
-        BigDecimal min_y = new BigDecimal(Math.max(Math.min(v1.y,v2.y), Math.min(v3.y,v4.y)));
-
-        int decimalPlaces = 6;
-
-        max_x = max_x.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        max_y = max_y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        min_x = min_x.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        min_y = min_y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-
-        //check if one vertical
-        if (v2.x == v1.x) {
-            if (v3.x == v4.x) {return null;} //if both vertical discard (either concurrent or dont intersect - neither useful)
-            BigDecimal y = new BigDecimal(m2 * v1.x + b2);
-            y = y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-            Vertex i = new Vertex(v1.x, y.doubleValue());
-            if (i.x <= max_x.doubleValue() && i.x >= min_x.doubleValue() && i.y <= max_y.doubleValue() && i.y >= min_y.doubleValue()) {
-                return i;
+    // Picks at random one of the vertices of the edges around the cell that bound a rectangle with the cell's center that can be cut
+    private Vert selectRectangle(Edge left, Edge right, Edge up, Edge down, int i, int j) {
+        int yc = 2 * i + 1, xc = 2 * j + 1;
+        Vert[] candidates = new Vert[8];
+        int[] type = new int[8]; // 0 cannot be cut, 1 can, 2 to be checked
+        candidates[0] = right.v;
+        candidates[1] = right.v.nxt;
+        type[0] = type[1] = 2;
+        int last = 1;
+
+        Edge[] around = {up, left, down};
+        for (int e = 0; e < 3; e++) {
+            Edge edge = around[e];
+            if (edge.v != candidates[last]) {
+                candidates[++last] = edge.v;
+                type[last] = inRectangle(candidates[last - 1], edge.v, xc, yc) ? 0 : 2;
+                if (inRectangle(edge.v, candidates[last - 1], xc, yc)) {type[last - 1] = 0;}
+            }
+            else {
+                type[last] = 1;
             }
-            return null;
-        }
 
-        if (v4.x == v3.x) {
-            if (v1.x == v2.x) {return null;} //if both vertical discard (either concurrent or dont intersect - neither useful)
-            BigDecimal y = new BigDecimal(m1 * v3.x + b1);
-            y = y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-            Vertex i = new Vertex(v3.x, y.doubleValue());
-            if (i.x <= max_x.doubleValue() && i.x >= min_x.doubleValue() && i.y <= max_y.doubleValue() && i.y >= min_y.doubleValue()) {
-                return i;
+            if (e == 2) {
+                if (edge.v.nxt != candidates[0]) {
+                    candidates[++last] = edge.v.nxt;
+                    type[last] = inRectangle(candidates[0], edge.v.nxt, xc, yc) ? 0 : 2;
+                    if (inRectangle(edge.v.nxt, candidates[0], xc, yc)) {type[0] = 0;}
+                }
+                else {
+                    type[0] = 1;
+                }
+            }
+            else {
+                candidates[++last] = edge.v.nxt;
+                type[last] = 2;
             }
-            return null;
         }
 
-        
-        //for any other case
-        double crossx = 0;
-        if (m1 == m2) {return null;}
-        else if (b1 != b2) {crossx = (b2 - b1) / (m1 - m2);}
-        BigDecimal roundedCrossx = new BigDecimal(crossx);
-        roundedCrossx = roundedCrossx.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        BigDecimal crossy = new BigDecimal((m1 * crossx + b1));
-        crossy = crossy.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        Vertex i = new Vertex(roundedCrossx.doubleValue(), crossy.doubleValue()); 
-
-        if (roundedCrossx.doubleValue() <= max_x.doubleValue() && roundedCrossx.doubleValue() >= min_x.doubleValue() && crossy.doubleValue() <= max_y.doubleValue() && crossy.doubleValue() >= min_y.doubleValue()) {
-            return i;
+        int count = 0;
+        for (int r = 0; r <= last; r++) {
+            if (type[r] == 2) {type[r] = canCut(candidates[r], xc, yc) ? 1 : 0;}
+            if (type[r] == 1) {count++;}
+        }
+        if (count == 0) return null;
+
+        int pick = random.nextInt(count);
+        for (int r = 0; r <= last; r++) {
+            if (type[r] == 1 && pick-- == 0) return candidates[r];
         }
         return null;
     }
 
-    public Vertex line_intersect(Vertex v1, Vertex v2, Vertex v3, Vertex v4) { //check if line intersects segment
-        double m1 = (v2.y - v1.y) / (v2.x - v1.x);
-        double m2 = (v4.y - v3.y) / (v4.x - v3.x);
-        double b1 = v2.y - m1 * v2.x;
-        double b2 = v4.y - m2 * v4.x;
-
-        BigDecimal max_x = new BigDecimal(Math.max(v3.x,v4.x));
-        BigDecimal max_y = new BigDecimal(Math.max(v3.y,v4.y));
-        BigDecimal min_x = new BigDecimal(Math.min(v3.x,v4.x));
-        BigDecimal min_y = new BigDecimal(Math.min(v3.y,v4.y));
-
-        int decimalPlaces = 6;
-
-        max_x = max_x.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        max_y = max_y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        min_x = min_x.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        min_y = min_y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-
-        if (v1.x == v2.x) { //check if line is vertical
-            if (v3.x == v4.x) {return null;} //if both vertical discard (either concurrent or dont intersect - neither useful)
-            BigDecimal y = new BigDecimal(m2 * v1.x + b2);
-            y = y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-            Vertex i = new Vertex(v1.x, y.doubleValue());
-            if (i.x <= max_x.doubleValue() && i.x >= min_x.doubleValue() && i.y <= max_y.doubleValue() && i.y >= min_y.doubleValue()) {
-                return i;
-            }
-            return null;
-        }
+    // Whether v is in the rectangle with opposite corners w and (xc, yc), in doubled coordinates
+    private static boolean inRectangle(Vert v, Vert w, int xc, int yc) {
+        int xv = 2 * v.x, yv = 2 * v.y;
+        return xv >= Math.min(xc, 2 * w.x) && xv <= Math.max(xc, 2 * w.x) && yv >= Math.min(yc, 2 * w.y) && yv <= Math.max(yc, 2 * w.y);
+    }
 
-        if (v3.x == v4.x) { //check if segment is vertical
-            if (v1.x == v2.x) {return null;} //if both vertical discard (either concurrent or dont intersect - neither useful)
-            BigDecimal y = new BigDecimal(m1 * v3.x + b1);
-            y = y.setScale(decimalPlaces, RoundingMode.HALF_UP);
-            Vertex i = new Vertex(v3.x, y.doubleValue());
-            if (i.x <= max_x.doubleValue() && i.x >= min_x.doubleValue() && i.y <= max_y.doubleValue() && i.y >= min_y.doubleValue()) {
-                return i;
-            }
-            return null;
+    // Whether no vertex other than w is in the rectangle with opposite corners w and (xc, yc)
+    private boolean canCut(Vert w, int xc, int yc) {
+        Vert v = polygon;
+        do {
+            if (v != w && inRectangle(v, w, xc, yc)) return false;
+            v = v.nxt;
+        } while (v != polygon);
+        return true;
+    }
+
+    // Inserts a new row after row i and a new column after column j, growing the cells crossed by them
+    private void inflate(int i, int j, int row, List<Edge> horizontal) {
+        rows.add(row + 1, rows.get(row));
+        area += rows.get(row);
+
+        Vert v = polygon;
+        do {
+            if (v.x > j) v.x++;
+            if (v.y > i) v.y++;
+            v = v.nxt;
+        } while (v != polygon);
+
+        int y = 1, r = 0;
+        for (int e = 0; e < horizontal.size(); e += 2) { // the polygon is between pairs of consecutive horizontal edges
+            int from = horizontal.get(e).v.y;
+            int to = horizontal.get(e + 1).v.y;
+            for (; y < from; y++) {r++;}
+            do {
+                rows.set(r, rows.get(r) + 1);
+                area++;
+                y++;
+                r++;
+            } while (y < to);
         }
+    }
 
-        //for any other case
-        double crossx = 0;
-        if (m1 == m2) {return null;}
-        else if (b1 != b2) {crossx = (b2 - b1) / (m1 - m2);}
-        BigDecimal roundedCrossx = new BigDecimal(crossx);
-        roundedCrossx = roundedCrossx.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        BigDecimal crossy = new BigDecimal((m1 * crossx + b1));
-        crossy = crossy.setScale(decimalPlaces, RoundingMode.HALF_UP);
-        Vertex i = new Vertex(roundedCrossx.doubleValue(), crossy.doubleValue());   
+    // Cuts the rectangle with opposite corners w and the center of cell (i+1, j+1), moving w to that corner
+    private void cutRectangle(Vert w, int i, int j) {
+        int xc = j + 1, yc = i + 1;
+        int xmin = Math.min(xc, w.x), xmax = Math.max(xc, w.x);
+        int ymin = Math.min(yc, w.y), ymax = Math.max(yc, w.y);
+        for (int y = ymin; y < ymax; y++) {
+            rows.set(y - 1, rows.get(y - 1) - (xmax - xmin));
+        }
 
-        if (roundedCrossx.doubleValue() <= max_x.doubleValue() && roundedCrossx.doubleValue() >= min_x.doubleValue() && crossy.doubleValue() <= max_y.doubleValue() && crossy.doubleValue() >= min_y.doubleValue()) {
-            return i;
+        Vert s0, s1;
+        if (w.prev.y == w.y) {
+            s0 = new Vert(xc, w.y);
+            s1 = new Vert(w.x, yc);
+            if (polygon == w) polygon = s0;
         }
-        return null;
+        else {
+            s1 = new Vert(xc, w.y);
+            s0 = new Vert(w.x, yc);
+        }
+        w.x = xc;
+        w.y = yc;
+
+        w.prev.nxt = s0;
+        s0.prev = w.prev;
+        s0.nxt = w;
+        s1.nxt = w.nxt;
+        w.nxt.prev = s1;
+        s1.prev = w;
+        w.prev = s0;
+        w.nxt = s1;
+        area -= (xmax - xmin) * (ymax - ymin);
     }
+}
 
-    public static boolean areCollinear(Vertex a, Vertex b, Vertex c) {
-        // Define a small tolerance value to account for floating-point inaccuracies
-        double epsilon = 1e-5;
 
-        // Calculate the cross product of vectors formed by points (a, b) and (a, c)
-        double crossProduct = (b.y - a.y) * (c.x - a.x) - (c.y - a.y) * (b.x - a.x);
+// Time spent in each phase of the pipeline and counts of the main operations, for one DCEL. Written as JSON lines by batch mode and also
+// committed as JFR events (taa.Phase), so that a recording shows which phase of which run took the time
+class Metrics {
+    enum Phase {PARTITION, RAYS, CROSSINGS, MERGE, OUTPUT}
 
-        // If the absolute value of the cross product is less than epsilon, points are considered collinear
-        return Math.abs(crossProduct) < epsilon;
-    }
+    final long[] nanos = new long[Phase.values().length];
+    long segIntersects, lineIntersects, facesCreated, halfEdgesCreated, halfEdgesRemoved, regions;
 
-    public boolean segInPoly(Vertex start, Vertex end) { // check if segment is inside the polygon
-        Vertex center = new Vertex((start.x + end.x) / 2 + 0.00382, (start.y + end.y) / 2 + 0.00382); // added value just to make lesser odds of corresponding to HV partition line
-        Vertex inf = new Vertex(1000000, center.y);
+    private long start;
+    private PhaseEvent event;
+    private long[] before; // counters when the current phase began
 
-        int intersect = 0;
-        for (HalfEdge e : externalEdges) {
-            Vertex i = seg_intersect(center, inf, e.origin, e.next.origin);
-            if (i != null) {
-                if (!i.equals(e.next.origin)) { // para nao contabilizar 2 vezes (como inicio de um edge e fim de outro)
-                    intersect++;
-                }
-            }
+    public void begin(Phase phase) {
+        start = System.nanoTime();
+        before = counters();
+        event = null;
+        if (FlightRecorder.isInitialized()) { // loading the event class costs a few hundred ms, only worth it when something is recording
+            event = new PhaseEvent();
+            event.phase = phase.name();
+            event.begin();
+        }
+    }
+
+    public void end(Phase phase) {
+        nanos[phase.ordinal()] += System.nanoTime() - start;
+        if (event != null && event.shouldCommit()) {
+            long[] now = counters();
+            event.segIntersects = now[0] - before[0];
+            event.lineIntersects = now[1] - before[1];
+            event.facesCreated = now[2] - before[2];
+            event.halfEdgesCreated = now[3] - before[3];
+            event.halfEdgesRemoved = now[4] - before[4];
+            event.regions = now[5] - before[5];
+            event.commit();
         }
+    }
 
-        if (intersect % 2 == 0) {
-            return false;
+    private long[] counters() {
+        return new long[] {segIntersects, lineIntersects, facesCreated, halfEdgesCreated, halfEdgesRemoved, regions};
+    }
+
+    // One JSON object with the given fields (already in JSON, e.g. "\"k\":2") followed by the times in milliseconds and the counters
+    public String toJson(String fields) {
+        StringBuilder json = new StringBuilder("{").append(fields).append(",\"ms\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {json.append(',');}
+            json.append('"').append(phase.name().toLowerCase(Locale.ROOT)).append("\":").append(String.format(Locale.ROOT, "%.3f", nanos[phase.ordinal()] / 1e6));
         }
-        return true;
+        json.append("},\"counters\":{\"seg_intersect\":").append(segIntersects)
+            .append(",\"line_intersect\":").append(lineIntersects)
+            .append(",\"faces_created\":").append(facesCreated)
+            .append(",\"half_edges_created\":").append(halfEdgesCreated)
+            .append(",\"half_edges_removed\":").append(halfEdgesRemoved)
+            .append(",\"regions\":").append(regions)
+            .append("}}");
+        return json.toString();
     }
 }
+
+@Name("taa.Phase")
+@Label("Illumination Phase")
+@Category("TAA")
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("seg_intersect Calls")
+    long segIntersects;
+
+    @Label("line_intersect Calls")
+    long lineIntersects;
+
+    @Label("Faces Created")
+    long facesCreated;
+
+    @Label("Half-Edges Created")
+    long halfEdgesCreated;
+
+    @Label("Half-Edges Removed")
+    long halfEdgesRemoved;
+
+    @Label("Regions Emitted")
+    long regions;
+}
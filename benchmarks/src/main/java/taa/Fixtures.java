@@ -0,0 +1,52 @@
+package taa;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Inputs shared by the benchmarks: the same permutominoes (fixed seed) and a guard for which the engine completes on them
+final class Fixtures {
+    static final long SEED = 42;
+
+    private Fixtures() {
+    }
+
+    static Vertex[] polygon(int n) {
+        return new PolygonGenerator(SEED).permutomino(n);
+    }
+
+    // The first vertex of the polygon whose visibility can be computed (the engine still fails for a few guards)
+    static Vertex guard(DCELSnapshot partitioned) {
+        for (Vertex v : partitioned.externalVertices()) {
+            try {
+                DCEL dcel = partitioned.instantiate();
+                dcel.verbose = false;
+                dcel.computeVisibility(v);
+                return v;
+            } catch (RuntimeException e) {
+                // try the next one
+            }
+        }
+        throw new IllegalStateException("no vertex of the polygon works as a guard");
+    }
+
+    static DCELSnapshot visible(DCELSnapshot partitioned, Vertex guard) {
+        DCEL dcel = partitioned.instantiate();
+        dcel.verbose = false;
+        dcel.computeVisibility(guard);
+        return new DCELSnapshot(dcel);
+    }
+
+    // The chords of the H/V partition without repetitions, in the order buildPartitionedDCEL adds them
+    static List<Vertex[]> chords(Vertex[] polygon) {
+        List<Vertex[]> chords = HVPartitioner.chords(polygon);
+        VertexIndex keys = new VertexIndex();
+        Set<Long> seen = new HashSet<>();
+        chords.removeIf(c -> {
+            int a = keys.findOrAdd(c[0]);
+            int b = keys.findOrAdd(c[1]);
+            return !seen.add(((long) Math.min(a, b) << 32) | Math.max(a, b));
+        });
+        return chords;
+    }
+}
@@ -0,0 +1,67 @@
+package taa;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The geometric predicates, on random segments between points of the polygon's bounding box (each call takes the next segment)
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    private static final int SEGMENTS = 1024; // a power of two
+
+    @Param({"12", "100", "1000", "10000"})
+    int n;
+
+    DCEL dcel;
+    Vertex[] from = new Vertex[SEGMENTS], to = new Vertex[SEGMENTS]; // queries
+    Vertex[] wallFrom = new Vertex[SEGMENTS], wallTo = new Vertex[SEGMENTS]; // edges of the polygon
+    int next;
+
+    @Setup
+    public void setup() {
+        Vertex[] polygon = Fixtures.polygon(n);
+        dcel = TAA_proj.buildPartitionedDCEL(polygon);
+        Random random = new Random(Fixtures.SEED);
+        for (int i = 0; i < SEGMENTS; i++) {
+            from[i] = new Vertex(random.nextDouble() * n / 2, random.nextDouble() * n / 2);
+            to[i] = new Vertex(random.nextDouble() * n / 2, random.nextDouble() * n / 2);
+            int w = random.nextInt(polygon.length);
+            wallFrom[i] = polygon[w];
+            wallTo[i] = polygon[(w + 1) % polygon.length];
+        }
+    }
+
+    @Benchmark
+    public Vertex seg_intersect() {
+        int i = next++ & (SEGMENTS - 1);
+        return dcel.seg_intersect(from[i], to[i], wallFrom[i], wallTo[i]);
+    }
+
+    @Benchmark
+    public Vertex line_intersect() {
+        int i = next++ & (SEGMENTS - 1);
+        return dcel.line_intersect(from[i], to[i], wallFrom[i], wallTo[i]);
+    }
+
+    @Benchmark
+    public boolean segInPoly() {
+        int i = next++ & (SEGMENTS - 1);
+        return dcel.segInPoly(from[i], to[i]);
+    }
+}
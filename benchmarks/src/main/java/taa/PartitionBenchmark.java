@@ -0,0 +1,58 @@
+package taa;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Building the DCEL of the polygon and loading its H/V partition
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionBenchmark {
+
+    @Param({"12", "100", "1000", "10000"})
+    int n;
+
+    Vertex[] polygon;
+
+    @Setup
+    public void setup() {
+        polygon = Fixtures.polygon(n);
+    }
+
+    @Benchmark
+    public DCEL createDCELFromPolygon() {
+        DCEL dcel = new DCEL();
+        dcel.createDCELFromPolygon(polygon);
+        return dcel;
+    }
+
+    @Benchmark
+    public List<Vertex[]> hvChords() {
+        return HVPartitioner.chords(polygon);
+    }
+
+    @Benchmark
+    public DCEL buildPartitionedDCEL() {
+        return TAA_proj.buildPartitionedDCEL(polygon);
+    }
+
+    @Benchmark
+    public CompactDCEL buildPartitionedCompactDCEL() {
+        return TAA_proj.buildPartitionedCompactDCEL(polygon);
+    }
+}
@@ -0,0 +1,125 @@
+package taa;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The phases that modify the DCEL they run on: each invocation gets a fresh copy, instantiated from a snapshot outside of the measurement.
+// As the copy is made for every call, the times for the smallest polygons include some of JMH's own per invocation overhead, and the allocation
+// rates reported by -prof gc include the copy
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhaseBenchmark {
+
+    // The polygon with all the chords of its H/V partition but the last one, which the benchmark adds
+    @State(Scope.Thread)
+    public static class AddPartitionState {
+        @Param({"12", "100", "1000", "10000"})
+        int n;
+
+        DCELSnapshot base;
+        Vertex[] chord;
+        DCEL dcel;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            Vertex[] polygon = Fixtures.polygon(n);
+            List<Vertex[]> chords = Fixtures.chords(polygon);
+            DCEL partial = new DCEL();
+            partial.createDCELFromPolygon(polygon);
+            for (int i = 0; i < chords.size() - 1; i++) {
+                partial.addPartition(chords.get(i)[0], chords.get(i)[1]);
+            }
+            base = new DCELSnapshot(partial);
+            chord = chords.get(chords.size() - 1);
+        }
+
+        @Setup(Level.Invocation)
+        public void fresh() {
+            dcel = base.instantiate();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class VisibilityState {
+        @Param({"12", "100", "1000", "10000"})
+        int n;
+
+        DCELSnapshot partitioned;
+        Vertex guard;
+        DCEL dcel;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            partitioned = new DCELSnapshot(TAA_proj.buildPartitionedDCEL(Fixtures.polygon(n)));
+            guard = Fixtures.guard(partitioned);
+        }
+
+        @Setup(Level.Invocation)
+        public void fresh() {
+            dcel = partitioned.instantiate();
+            dcel.verbose = false;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class MergeState {
+        @Param({"12", "100", "1000", "10000"})
+        int n;
+
+        @Param({"0", "2", "4"})
+        int k;
+
+        DCELSnapshot visible;
+        Vertex guard;
+        DCEL dcel;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            DCELSnapshot partitioned = new DCELSnapshot(TAA_proj.buildPartitionedDCEL(Fixtures.polygon(n)));
+            guard = Fixtures.guard(partitioned);
+            visible = Fixtures.visible(partitioned, guard);
+        }
+
+        @Setup(Level.Invocation)
+        public void fresh() {
+            dcel = visible.instantiate();
+            dcel.verbose = false;
+        }
+    }
+
+    @Benchmark
+    public DCEL addPartition(AddPartitionState s) {
+        s.dcel.addPartition(s.chord[0], s.chord[1]);
+        return s.dcel;
+    }
+
+    @Benchmark
+    public DCEL computeVisibility(VisibilityState s) {
+        s.dcel.computeVisibility(s.guard);
+        return s.dcel;
+    }
+
+    @Benchmark
+    public DCEL mergeFaces(MergeState s) throws IOException {
+        s.dcel.mergeFaces(s.k, s.guard, Writer.nullWriter());
+        return s.dcel;
+    }
+}
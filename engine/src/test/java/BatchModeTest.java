@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchModeTest {
+    static final Path POLYGON = Paths.get("..", "GenPols_RectParts_TAA", "OldExamples", "Pol_100_distrInf", "grid_pol_100");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void batchWritesWhatTheInteractiveModeWrites() throws Exception {
+        Vertex[] polygon = TAA_proj.readVertices(new NumberReader(POLYGON.toString()));
+        StringBuilder queries = new StringBuilder();
+        StringWriter interactive = new StringWriter();
+        for (int k : new int[] {0, 4}) {
+            for (Vertex guard : polygon) {
+                queries.append(guard.x).append(' ').append(guard.y).append(' ').append(k).append('\n');
+
+                DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon); // as main does it, for one guard
+                dcel.verbose = false;
+                dcel.computeVisibility(guard);
+                interactive.write(guard.x + " " + guard.y + " " + k + "\n");
+                dcel.mergeFaces(k, guard, interactive);
+            }
+        }
+        Path queryFile = Files.write(dir.resolve("queries"), queries.toString().getBytes());
+        Path output = dir.resolve("output");
+
+        TAA_proj.runBatch(new String[] {"--batch", POLYGON.toString(), queryFile.toString(), output.toString()});
+
+        assertEquals(interactive.toString(), new String(Files.readAllBytes(output)));
+    }
+
+    // The first program added the partitions in the order of a HashMap of vertices hashed by identity, which left out some faces with at
+    // most k walls, e.g. the one between (27, 27), (28, 27) and the ray through (28, 28.5) for this guard
+    @Test
+    void regionsHoldEveryPointWithAtMostKWalls() throws IOException {
+        Vertex[] polygon = TAA_proj.readVertices(new NumberReader(POLYGON.toString()));
+        Vertex guard = new Vertex(40, 36);
+        DCEL walls = TAA_proj.buildPartitionedDCEL(polygon);
+        DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+        dcel.verbose = false;
+        dcel.computeVisibility(guard);
+        List<Vertex[]> regions = new ArrayList<>();
+        for (List<Vertex> region : dcel.mergeRegions(4)) {
+            regions.add(region.toArray(new Vertex[0]));
+        }
+
+        assertTrue(regions.stream().anyMatch(r -> TAA_proj.inPolygon(r, new Vertex(27.5, 27.3))));
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            Vertex p = new Vertex(random.nextDouble() * 50, random.nextDouble() * 50);
+            if (!TAA_proj.inPolygon(polygon, p)) continue;
+            boolean lit = walls.countWalls(guard, p) <= 4;
+            assertEquals(lit, regions.stream().anyMatch(r -> TAA_proj.inPolygon(r, p)), "point (" + p.x + "," + p.y + ")");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// CompactDCEL.addPartition against DCEL.addPartition, which it follows step by step
+class CompactDCELTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"exemplo_transf_grid", "OldExamples/Pol_12_swerc/grid_pol_12_exp", "OldExamples/Pol_30_swerc/grid_pol_30_exp",
+                            "OldExamples/Pol_100_distrInf/grid_pol_100"})
+    void fixturesGiveTheSamePartition(String name) throws IOException {
+        Vertex[] polygon = TAA_proj.readVertices(new NumberReader(Paths.get("..", "GenPols_RectParts_TAA").resolve(name).toString()));
+        assertSamePartition(polygon);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void generatedPolygonsGiveTheSamePartition(int seed) {
+        assertSamePartition(new PolygonGenerator(seed).permutomino(60));
+    }
+
+    @Test
+    void chordsOutOfThePolygonStopInsteadOfLooping() {
+        Vertex[] square = {new Vertex(0, 0), new Vertex(4, 0), new Vertex(4, 4), new Vertex(0, 4)};
+        for (Vertex[] chord : new Vertex[][] {{new Vertex(0, 0), new Vertex(5, 5)}, {new Vertex(0, 2), new Vertex(6, 2)}}) {
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                DCEL dcel = new DCEL();
+                dcel.createDCELFromPolygon(square);
+                assertThrows(IllegalStateException.class, () -> dcel.addPartition(chord[0], chord[1]));
+
+                CompactDCEL compact = new CompactDCEL();
+                compact.createDCELFromPolygon(square);
+                assertThrows(IllegalStateException.class, () -> compact.addPartition(chord[0], chord[1]));
+            });
+        }
+    }
+
+    private static void assertSamePartition(Vertex[] polygon) {
+        DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+        CompactDCEL compact = TAA_proj.buildPartitionedCompactDCEL(polygon);
+        assertEquals(dcel.faces.size(), compact.faceCount);
+        assertEquals(dcel.halfEdges.size(), compact.edgeCount);
+        assertEquals(dcel.vertices.size(), compact.vertexCount); // a chord ending on a point already added does not add it again
+    }
+}
@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class DCELSnapshotTest {
+    // What batch mode writes for every vertex of the polygon as the guard, with k = 2, each guard on its own instance of the snapshot
+    static String regions(DCELSnapshot snapshot) throws IOException {
+        StringWriter out = new StringWriter();
+        for (Vertex guard : snapshot.externalVertices()) {
+            DCEL dcel = snapshot.instantiate();
+            dcel.verbose = false;
+            dcel.computeVisibility(guard);
+            out.write(guard.x + " " + guard.y + " 2\n");
+            dcel.mergeFaces(2, guard, out);
+        }
+        return out.toString();
+    }
+
+    // The same, partitioning the polygon again for every guard
+    static String regions(Vertex[] polygon) throws IOException {
+        StringWriter out = new StringWriter();
+        for (Vertex guard : polygon) {
+            DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+            dcel.verbose = false;
+            dcel.computeVisibility(guard);
+            out.write(guard.x + " " + guard.y + " 2\n");
+            dcel.mergeFaces(2, guard, out);
+        }
+        return out.toString();
+    }
+
+    @Test
+    void instancesAnswerAsAFreshPartition() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(3).permutomino(40);
+        String fresh = regions(polygon);
+
+        assertEquals(fresh, regions(new DCELSnapshot(TAA_proj.buildPartitionedDCEL(polygon))));
+        assertEquals(fresh, regions(new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon))));
+    }
+
+    @Test
+    void queriesDoNotChangeTheSnapshot() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(4).permutomino(40);
+        DCELSnapshot snapshot = new DCELSnapshot(TAA_proj.buildPartitionedDCEL(polygon));
+        int halfEdges = snapshot.halfEdgeCount();
+        String before = regions(snapshot);
+
+        DCEL used = snapshot.instantiate();
+        used.verbose = false;
+        used.computeVisibility(polygon[0]);
+        used.mergeRegions(0);
+
+        assertEquals(halfEdges, snapshot.halfEdgeCount());
+        assertEquals(before, regions(snapshot));
+    }
+
+    @Test
+    void bytesGiveBackTheSamePartition() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(3).permutomino(40);
+        DCELSnapshot snapshot = new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon));
+
+        DCELSnapshot read = DCELSnapshot.fromBytes(snapshot.toBytes(), polygon);
+
+        assertNotNull(read);
+        assertEquals(snapshot.halfEdgeCount(), read.halfEdgeCount());
+        assertEquals(regions(snapshot), regions(read));
+    }
+
+    @Test
+    void bytesOfAnotherPolygonAreNotUsed() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(3).permutomino(40);
+        Vertex[] other = new PolygonGenerator(4).permutomino(40);
+        ByteBuffer bytes = new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon)).toBytes();
+
+        assertNull(DCELSnapshot.fromBytes(bytes, other));
+    }
+
+    @Test
+    void truncatedBytesAreRejected() {
+        Vertex[] polygon = new PolygonGenerator(3).permutomino(40);
+        ByteBuffer bytes = new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon)).toBytes();
+        bytes.limit(bytes.limit() - Integer.BYTES);
+
+        assertThrows(IOException.class, () -> DCELSnapshot.fromBytes(bytes, polygon));
+    }
+
+    @Test
+    void indicesOutOfTheirArraysAreRejected() {
+        Vertex[] polygon = new PolygonGenerator(3).permutomino(40);
+        DCELSnapshot snapshot = new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon));
+        int edges = snapshot.halfEdgeCount();
+
+        assertThrows(IOException.class, () -> DCELSnapshot.fromBytes(withTwin(snapshot, 0, edges), polygon));
+        assertThrows(IOException.class, () -> DCELSnapshot.fromBytes(withTwin(snapshot, 0, -1), polygon));
+        assertThrows(IOException.class, () -> DCELSnapshot.fromBytes(withTwin(snapshot, 0, 2), polygon)); // in range, but not linked back
+    }
+
+    // The bytes of the snapshot with the twin of half-edge i replaced
+    static ByteBuffer withTwin(DCELSnapshot snapshot, int i, int twin) {
+        ByteBuffer bytes = snapshot.toBytes();
+        int points = bytes.getInt(2 * Integer.BYTES), faces = bytes.getInt(4 * Integer.BYTES);
+        bytes.putInt(8 * Integer.BYTES + 2 * (points + faces) * Double.BYTES + i * Integer.BYTES, twin); // the twins follow the header and the coordinates
+        return bytes;
+    }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ExactRaysTest {
+    @Test
+    void exactRaysGiveTheWallsOfTheDoubles() {
+        Random random = new Random(2);
+        for (long seed = 1; seed <= 3; seed++) {
+            Vertex[] polygon = new PolygonGenerator(seed).permutomino(50);
+            DCELSnapshot base = new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon));
+            for (int g = 0; g < polygon.length; g += 3) {
+                PointLocator doubles = locator(base, polygon[g], false);
+                PointLocator exact = locator(base, polygon[g], true);
+                for (int i = 0; i < 300; i++) {
+                    double x = random.nextDouble() * 25, y = random.nextDouble() * 25;
+                    assertEquals(doubles.wallsAt(x, y), exact.wallsAt(x, y), "seed " + seed + ", guard " + g + ", point (" + x + "," + y + ")");
+                }
+            }
+        }
+    }
+
+    private static PointLocator locator(DCELSnapshot base, Vertex guard, boolean exact) {
+        DCEL dcel = base.instantiate();
+        dcel.verbose = false;
+        dcel.exact = exact;
+        dcel.computeVisibility(guard);
+        return new PointLocator(dcel);
+    }
+
+    @Test
+    void polygonMustBeOrthogonal() {
+        assertTrue(ExactRays.supports(Arrays.asList(new Vertex(0, 0), new Vertex(2, 0), new Vertex(2, 2), new Vertex(0, 2))));
+        assertTrue(ExactRays.supports(Arrays.asList(new Vertex(0, 0), new Vertex(0.95, 0), new Vertex(0.95, 2), new Vertex(0, 2))));
+        assertFalse(ExactRays.supports(Arrays.asList(new Vertex(0, 0), new Vertex(2, 1), new Vertex(0, 2))));
+    }
+
+    @Test
+    void rationalsAreKeptInLowestTerms() {
+        assertEquals(new Rational(-1, 2), new Rational(2, -4));
+        assertEquals(new Rational(5, 6), new Rational(1, 2).plus(new Rational(1, 3)));
+        assertEquals(new Rational(1, 4), new Rational(1, 2).half());
+        assertTrue(new Rational(1, 3).compareTo(new Rational(1, 2)) < 0);
+        assertEquals(0, new Rational(6, 3).compareTo(2));
+        assertThrows(ArithmeticException.class, () -> new Rational(1, 0));
+    }
+
+    @Test
+    void rationalsGoOnPastLongs() {
+        Rational max = Rational.of(Long.MAX_VALUE);
+        Rational twice = max.plus(max);
+        assertTrue(twice.compareTo(max) > 0);
+        assertEquals(max, twice.half());
+        assertEquals(Rational.ONE, twice.dividedBy(max).half());
+        assertEquals(Rational.of(Long.MIN_VALUE), Rational.of(Long.MIN_VALUE).times(Rational.ONE));
+        assertEquals(new Rational(-1, 3), new Rational(1, 3).minus(new Rational(2, 3)));
+
+        Rational third = Rational.of(0.3).minus(Rational.of(0.2)); // doubles are taken exactly, so this is not 0.1
+        assertTrue(third.compareTo(Rational.of(0.1)) != 0);
+        assertEquals(0.3 - 0.2, third.toDouble());
+        assertEquals(new Rational(1, 8), Rational.of(0.125));
+        assertEquals(Rational.of(0.94).times(Rational.of(0.94)), Rational.of(0.94).times(Rational.of(0.94))); // beyond longs, still exact
+    }
+
+    @Test
+    void scaledPolygonsHaveIntegerCoordinatesOnTheirGrid() {
+        Vertex[] polygon = new Vertex[] {new Vertex(0.3, 0.1), new Vertex(0.3 * 7, 0.1), new Vertex(0.3 * 7, 0.1 * 3), new Vertex(0.3 * 2, 0.1 * 3),
+                                         new Vertex(0.3 * 2, 0.1 * 2), new Vertex(0.3, 0.1 * 2)}; // an L, on the grid 0.3 + 0.3i, 0.1 + 0.1j
+        ExactRays.Grid x = new ExactRays.Grid(Arrays.asList(polygon), true);
+        ExactRays.Grid y = new ExactRays.Grid(Arrays.asList(polygon), false);
+
+        assertEquals(Rational.of(6), x.of(0.3 * 7)); // 2.1000000000000005
+        assertEquals(Rational.of(6), x.of(2.1));
+        assertEquals(Rational.of(2), y.of(0.1 * 3));
+        assertEquals(0.3 * 7, x.back(Rational.of(6)), 1e-12);
+        assertTrue(x.of(1.0).compareTo(2) > 0 && x.of(1.0).compareTo(3) < 0); // a guard between grid lines stays between them
+    }
+}
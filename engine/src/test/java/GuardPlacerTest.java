@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class GuardPlacerTest {
+    @Test
+    void guardsAreAddedUntilThePolygonIsIlluminated() throws Exception {
+        Vertex[] polygon = new PolygonGenerator(6).permutomino(40);
+        double total = DCEL.area(Arrays.asList(polygon));
+        List<GuardPlacer.Step> steps = new GuardPlacer(new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon)), 0)
+            .place(Arrays.asList(polygon), 0, total, 2);
+
+        double covered = 0;
+        List<Vertex> chosen = new ArrayList<>();
+        for (GuardPlacer.Step step : steps) {
+            assertTrue(step.gain > 0);
+            assertEquals(covered + step.gain, step.covered, 1e-9);
+            covered = step.covered;
+
+            chosen.add(step.guard); // what the chosen guards illuminate together, as --multi computes it
+            DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+            dcel.verbose = false;
+            int[] server = dcel.computeVisibility(chosen);
+            assertEquals(Arrays.stream(dcel.servedAreas(0, server, chosen.size())).sum(), covered, 1e-6);
+        }
+        assertEquals(total, covered, 1e-6); // guards at every vertex see all of the polygon
+    }
+
+    @Test
+    void firstGuardIlluminatesTheMost() throws Exception {
+        Vertex[] polygon = new PolygonGenerator(7).permutomino(30);
+        List<GuardPlacer.Step> steps = new GuardPlacer(new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon)), 2)
+            .place(Arrays.asList(polygon), 1, DCEL.area(Arrays.asList(polygon)), 4);
+
+        assertEquals(1, steps.size());
+        for (Vertex guard : polygon) {
+            DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+            dcel.verbose = false;
+            double illuminated = dcel.servedAreas(2, dcel.computeVisibility(List.of(guard)), 1)[0];
+            assertTrue(illuminated <= steps.get(0).gain + 1e-6, "guard (" + guard.x + "," + guard.y + ")");
+        }
+    }
+
+    @Test
+    void budgetIsRespected() throws Exception {
+        Vertex[] polygon = new PolygonGenerator(6).permutomino(40);
+        for (int budget = 1; budget <= 3; budget++) {
+            List<GuardPlacer.Step> steps = new GuardPlacer(new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon)), 0)
+                .place(Arrays.asList(polygon), budget, DCEL.area(Arrays.asList(polygon)), 2);
+            assertTrue(steps.size() <= budget);
+        }
+    }
+}
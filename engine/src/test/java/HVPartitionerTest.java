@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// The partition the engine computes against the one gridnew.c wrote after the vertices, which the engine used to read and add with addPartition
+class HVPartitionerTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"exemplo_transf_grid", "OldExamples/Pol_12_swerc/grid_pol_12_exp", "OldExamples/Pol_30_swerc/grid_pol_30_exp",
+                            "OldExamples/Pol_100_distrInf/grid_pol_100"})
+    void partitionHasTheSegmentsOfGridnew(String name) throws IOException {
+        Path file = Paths.get("..", "GenPols_RectParts_TAA").resolve(name);
+        NumberReader reader = new NumberReader(file.toString());
+        Vertex[] polygon = TAA_proj.readVertices(reader);
+        List<Vertex[]> segments = new ArrayList<>();
+        while (reader.hasNext()) {
+            segments.add(new Vertex[] {new Vertex(reader.nextDouble(), reader.nextDouble()), new Vertex(reader.nextDouble(), reader.nextDouble())});
+        }
+
+        DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+
+        for (HalfEdge e : dcel.halfEdges) { // every edge is on one of the segments
+            assertTrue(segments.stream().anyMatch(s -> contains(s, e.origin) && contains(s, e.next.origin)),
+                       "edge (" + e.origin.x + "," + e.origin.y + ") -> (" + e.next.origin.x + "," + e.next.origin.y + ") is not in " + name);
+        }
+        for (Vertex[] s : segments) { // and every segment is covered by edges, each half-edge counting half
+            double covered = 0;
+            for (HalfEdge e : dcel.halfEdges) {
+                if (contains(s, e.origin) && contains(s, e.next.origin)) covered += e.origin.distanceTo(e.next.origin) / 2;
+            }
+            assertEquals(s[0].distanceTo(s[1]), covered, 1e-9, "segment (" + s[0].x + "," + s[0].y + ") -> (" + s[1].x + "," + s[1].y + ")");
+        }
+
+        double faces = 0;
+        for (Face f : dcel.faces) {
+            if (f.counter == 0) continue; // the outer face
+            List<Vertex> cycle = new ArrayList<>();
+            HalfEdge e = f.outerComponent;
+            do {
+                cycle.add(e.origin);
+                e = e.next;
+            } while (e != f.outerComponent);
+            faces += DCEL.area(cycle);
+        }
+        assertEquals(DCEL.area(Arrays.asList(polygon)), faces, 1e-9);
+    }
+
+    // Whether p is on the axis-parallel segment s
+    private static boolean contains(Vertex[] s, Vertex p) {
+        return p.x >= Math.min(s[0].x, s[1].x) && p.x <= Math.max(s[0].x, s[1].x) && p.y >= Math.min(s[0].y, s[1].y) && p.y <= Math.max(s[0].y, s[1].y)
+            && (s[0].x == s[1].x ? p.x == s[0].x : p.y == s[0].y);
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+// Guards that are not vertices whose rays, with doubles, cut corners so close to a vertex that addPartition failed or never ended
+class InteriorGuardTest {
+    @ParameterizedTest
+    @CsvSource({"5, 400, 89.75, 139.5", "5, 400, 176.75, 87.875", "5, 400, 135.75, 81.375", "6, 1000, 365.375, 289.875", "5, 400, 89.7, 139.45",
+                "5, 400, 176.8, 87.9"})
+    void raysOfTheGuardGiveTheWallsOfEveryPoint(long seed, int n, double x, double y) {
+        assertWallsOfEveryPoint(new PolygonGenerator(seed).permutomino(n), x, y, n / 2, seed);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"89.7, 139.45", "176.8, 87.9", "176.75, 87.875"})
+    void guardIsNotMoved(double x, double y) {
+        Vertex[] polygon = new PolygonGenerator(5).permutomino(400);
+        Vertex guard = TAA_proj.guardAt(polygon, x, y);
+
+        assertNotNull(guard);
+        assertEquals(x, guard.x);
+        assertEquals(y, guard.y);
+    }
+
+    // Snapped to multiples of 1/8, this guard went to x = 1, outside the polygon
+    @Test
+    void guardNearAWallOfANonIntegerPolygon() {
+        Vertex[] rectangle = {new Vertex(0, 0), new Vertex(0.95, 0), new Vertex(0.95, 2), new Vertex(0, 2)};
+        assertWallsOfEveryPoint(rectangle, 0.94, 1, 2, 1);
+        assertNull(TAA_proj.guardAt(rectangle, 0.96, 1));
+    }
+
+    // Coordinates such as 0.3 * 7 = 2.1000000000000005 are not on the grid of the intersections, which are rounded to 6 decimal places: the
+    // HV partition failed on them, and rays through their vertices missed them without the grid of ExactRays
+    @ParameterizedTest
+    @CsvSource({"1, 60, 0.3", "2, 200, 0.3", "3, 100, 0.1", "4, 100, 0.7"})
+    void guardsInsideAScaledPolygon(long seed, int n, double scale) {
+        Vertex[] generated = new PolygonGenerator(seed).permutomino(n);
+        Vertex[] polygon = new Vertex[generated.length];
+        for (int i = 0; i < generated.length; i++) {
+            polygon[i] = new Vertex(generated[i].x * scale, generated[i].y * scale);
+        }
+
+        Random random = new Random(seed);
+        for (int tried = 0; tried < 5; ) {
+            double x = random.nextDouble() * n / 2 * scale, y = random.nextDouble() * n / 2 * scale;
+            if (TAA_proj.guardAt(polygon, x, y) == null) continue;
+            assertWallsOfEveryPoint(polygon, x, y, n / 2 * scale, seed);
+            tried++;
+        }
+    }
+
+    // The walls PointLocator finds from the visibility of the guard at (x, y), against countWalls, for random points of [0, size)^2
+    private static void assertWallsOfEveryPoint(Vertex[] polygon, double x, double y, double size, long seed) {
+        Vertex guard = TAA_proj.guardAt(polygon, x, y);
+        assertNotNull(guard);
+
+        DCEL walls = TAA_proj.buildPartitionedDCEL(polygon);
+        DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+        dcel.verbose = false;
+        dcel.computeVisibility(guard);
+        PointLocator locator = new PointLocator(dcel);
+
+        Random random = new Random(seed);
+        for (int i = 0; i < 200; i++) {
+            Vertex p = new Vertex(random.nextDouble() * size, random.nextDouble() * size);
+            int expected = TAA_proj.inPolygon(polygon, p) ? walls.countWalls(guard, p) : -1;
+            assertEquals(expected, locator.wallsAt(p.x, p.y), "guard (" + x + "," + y + "), point (" + p.x + "," + p.y + ")");
+        }
+    }
+}
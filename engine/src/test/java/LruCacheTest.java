@@ -0,0 +1,56 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LruCacheTest {
+    @Test
+    void leastRecentlyUsedEntryIsEvictedFirst() {
+        LruCache<String, String> cache = new LruCache<>(3, value -> 1);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        cache.get("a");
+        cache.put("d", "4");
+
+        assertNull(cache.peek("b"));
+        assertNotNull(cache.peek("a"));
+        assertNotNull(cache.peek("c"));
+        assertNotNull(cache.peek("d"));
+        assertTrue(cache.toJson().contains("\"evictions\":1"));
+    }
+
+    @Test
+    void weightOfTheValuesBoundsTheCache() {
+        LruCache<String, String> cache = new LruCache<>(10, String::length);
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.put("c", "cccc");
+
+        assertNull(cache.peek("a"));
+        assertTrue(cache.toJson().contains("\"entries\":2,\"weight\":8"));
+    }
+
+    @Test
+    void valueHeavierThanTheCacheIsNotKept() {
+        LruCache<String, String> cache = new LruCache<>(3, String::length);
+        cache.put("a", "aa");
+        cache.put("b", "bbbb");
+
+        assertNull(cache.peek("b"));
+        assertEquals("aa", cache.peek("a"));
+    }
+
+    @Test
+    void hitsAndMissesAreCounted() {
+        LruCache<String, String> cache = new LruCache<>(3, value -> 1);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("b");
+        cache.peek("b");
+
+        assertTrue(cache.toJson().contains("\"hits\":1,\"misses\":1"));
+    }
+}
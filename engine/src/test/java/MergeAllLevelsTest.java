@@ -0,0 +1,36 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MergeAllLevelsTest {
+    @Test
+    void levelsAreTheRegionsOfEachK() {
+        Vertex[] polygon = new PolygonGenerator(5).permutomino(60);
+        for (int g = 0; g < polygon.length; g += 13) {
+            Vertex guard = polygon[g];
+            DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+            dcel.verbose = false;
+            dcel.computeVisibility(guard);
+            int halfEdges = dcel.halfEdges.size();
+            int[] modems = dcel.faces.stream().mapToInt(f -> f.modem).toArray();
+
+            List<List<List<Vertex>>> levels = dcel.mergeAllLevels();
+
+            assertEquals(dcel.maxModem() / 2 + 1, levels.size());
+            for (int i = 0; i < levels.size(); i++) {
+                DCEL fresh = TAA_proj.buildPartitionedDCEL(polygon);
+                fresh.verbose = false;
+                fresh.computeVisibility(guard);
+                assertEquals(fresh.mergeRegions(2 * i), levels.get(i), "guard (" + guard.x + "," + guard.y + "), k " + 2 * i);
+            }
+            // the DCEL is left as it was
+            assertEquals(halfEdges, dcel.halfEdges.size());
+            assertEquals(modems.length, dcel.faces.size());
+            for (int f = 0; f < modems.length; f++) {
+                assertEquals(modems[f], dcel.faces.get(f).modem);
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MergeRegionsTest {
+    @Test
+    void everyFaceMergesIntoThePolygon() {
+        for (int seed = 1; seed <= 3; seed++) {
+            Vertex[] polygon = new PolygonGenerator(seed).permutomino(50);
+            for (int g = 0; g < polygon.length; g += 9) {
+                DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+                dcel.verbose = false;
+                dcel.computeVisibility(polygon[g]);
+                List<List<Vertex>> regions = dcel.mergeRegions(dcel.maxModem());
+
+                assertEquals(1, regions.size());
+                assertEquals(DCEL.area(Arrays.asList(polygon)), DCEL.area(regions.get(0)), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    void pointsWithAtMostKWallsAreInARegion() {
+        Vertex[] polygon = new PolygonGenerator(2).permutomino(60);
+        DCEL walls = TAA_proj.buildPartitionedDCEL(polygon); // left as it is, for countWalls
+        Random random = new Random(1);
+
+        for (int g = 0; g < polygon.length; g += 11) {
+            Vertex guard = polygon[g];
+            for (int k = 0; k <= 4; k += 2) {
+                DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+                dcel.verbose = false;
+                dcel.computeVisibility(guard);
+                List<List<Vertex>> regions = dcel.mergeRegions(k);
+
+                for (int i = 0; i < 300; i++) {
+                    Vertex p = new Vertex(random.nextDouble() * 30, random.nextDouble() * 30);
+                    if (!TAA_proj.inPolygon(polygon, p) || walls.countWalls(guard, p) > k) continue;
+                    assertTrue(regions.stream().anyMatch(r -> TAA_proj.inPolygon(r.toArray(new Vertex[0]), p)),
+                               "guard (" + guard.x + "," + guard.y + "), k " + k + ", point (" + p.x + "," + p.y + ")");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MultiGuardTest {
+    static final Path POLYGON = Paths.get("..", "GenPols_RectParts_TAA", "OldExamples", "Pol_30_swerc", "grid_pol_30_exp");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void servedAreasCoverThePolygon() {
+        Vertex[] polygon = new PolygonGenerator(3).permutomino(60);
+        List<Vertex> guards = Arrays.asList(polygon[0], polygon[20], polygon[40]);
+        DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+        dcel.verbose = false;
+        int[] server = dcel.computeVisibility(guards);
+
+        double[] area = dcel.servedAreas(dcel.maxModem(), server, guards.size());
+
+        assertEquals(DCEL.area(Arrays.asList(polygon)), Arrays.stream(area).sum(), 1e-6);
+        double[] lit = dcel.servedAreas(0, server, guards.size()); // each guard serves at least what it sees
+        for (int g = 0; g < guards.size(); g++) {
+            DCEL alone = TAA_proj.buildPartitionedDCEL(polygon);
+            alone.verbose = false;
+            alone.computeVisibility(guards.get(g));
+            double seen = alone.mergeRegions(0).stream().mapToDouble(DCEL::area).sum();
+            assertTrue(lit[g] <= seen + 1e-6, "guard " + g);
+        }
+    }
+
+    @Test
+    void noGuardsServeNothing() {
+        Vertex[] polygon = new PolygonGenerator(3).permutomino(40);
+        DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+        dcel.verbose = false;
+        int[] server = dcel.computeVisibility(new ArrayList<>());
+
+        assertEquals(0, dcel.servedAreas(0, server, 0).length);
+        assertTrue(dcel.mergeServedRegions(0, server, 0).isEmpty());
+    }
+
+    @Test
+    void multiWritesAnEntryPerGuard() throws Exception {
+        Vertex[] polygon = TAA_proj.readVertices(new NumberReader(POLYGON.toString()));
+        Path guards = Files.write(dir.resolve("guards"), (polygon[0].x + " " + polygon[0].y + "\n-100 -100\n" + polygon[9].x + " " + polygon[9].y + "\n").getBytes());
+        Path output = dir.resolve("output");
+
+        TAA_proj.runMulti(new String[] {"--multi", POLYGON.toString(), guards.toString(), "2", output.toString()});
+
+        List<String> lines = Files.readAllLines(output);
+        assertEquals(polygon[0].x + " " + polygon[0].y + " 2", lines.get(0));
+        assertEquals(2, lines.stream().filter(l -> l.endsWith(" 2") && l.split(" ").length == 3).count()); // the guard outside is skipped
+    }
+
+    @Test
+    void multiNeedsAGuardInsideThePolygon() throws Exception {
+        for (String guards : new String[] {"", "-100 -100\n1000 1000\n"}) {
+            Path guardFile = Files.write(dir.resolve("guards"), guards.getBytes());
+            Path output = dir.resolve("output");
+
+            TAA_proj.runMulti(new String[] {"--multi", POLYGON.toString(), guardFile.toString(), "0", output.toString()});
+
+            assertFalse(Files.exists(output), guards);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class NumberReaderTest {
+    @TempDir
+    Path dir;
+
+    private NumberReader reader(String text) throws IOException {
+        Path file = dir.resolve("numbers");
+        Files.write(file, text.getBytes());
+        return new NumberReader(file.toString());
+    }
+
+    @Test
+    void numbersAreReadAsScannerReadsThem() throws IOException {
+        NumberReader reader = reader("  3\n-7 +4\t0.5 -2.25\r\n1e3 -1.5E-2 .75 123456789012345678901 -0\n");
+
+        assertEquals(3, reader.nextInt());
+        assertEquals(-7, reader.nextDouble());
+        assertEquals(4, reader.nextDouble());
+        assertEquals(0.5, reader.nextDouble());
+        assertEquals(-2.25, reader.nextDouble());
+        assertEquals(1000, reader.nextDouble());
+        assertEquals(-0.015, reader.nextDouble());
+        assertEquals(0.75, reader.nextDouble());
+        assertEquals(123456789012345678901.0, reader.nextDouble()); // too long for a long
+        assertEquals(-0.0, reader.nextDouble());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void inputEndsAtTheFirstTokenThatIsNotANumber() throws IOException {
+        NumberReader reader = reader("1 2\nsegments 3 4\n");
+
+        assertEquals(1, reader.nextInt());
+        assertTrue(reader.hasNext());
+        assertEquals(2, reader.nextInt());
+        assertFalse(reader.hasNext());
+        assertThrows(NoSuchElementException.class, reader::nextDouble);
+    }
+
+    @Test
+    void truncatedPolygonIsAnError() throws IOException {
+        assertThrows(NoSuchElementException.class, () -> TAA_proj.readVertices(reader("4 0 0 1 0 1 1 0")));
+        assertThrows(NumberFormatException.class, () -> reader("4.5").nextInt());
+        assertThrows(NumberFormatException.class, () -> reader("1.2.3").nextDouble());
+        assertFalse(reader("").hasNext());
+    }
+
+    @Test
+    void missingFileIsNotFound() {
+        assertThrows(FileNotFoundException.class, () -> new NumberReader(dir.resolve("missing").toString()));
+    }
+}
@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PartitionCacheTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void savedPartitionIsLoadedBack() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(5).permutomino(30);
+        DCELSnapshot snapshot = new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon));
+        PartitionCache cache = new PartitionCache(dir.toString());
+
+        assertNull(cache.load(polygon));
+        cache.save(polygon, snapshot);
+        DCELSnapshot loaded = cache.load(polygon);
+
+        assertNotNull(loaded);
+        assertEquals(DCELSnapshotTest.regions(snapshot), DCELSnapshotTest.regions(loaded));
+    }
+
+    @Test
+    void changedPolygonGetsAnotherFile() {
+        Vertex[] polygon = new PolygonGenerator(5).permutomino(30);
+        Vertex[] moved = polygon.clone();
+        moved[3] = new Vertex(polygon[3].x, polygon[3].y + 1);
+        PartitionCache cache = new PartitionCache(dir.toString());
+        cache.save(polygon, new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon)));
+
+        assertNotEquals(PartitionCache.fingerprint(polygon), PartitionCache.fingerprint(moved));
+        assertNotEquals(cache.file(polygon), cache.file(moved));
+        assertNull(cache.load(moved));
+    }
+
+    @Test
+    void fileOfAnotherPolygonWithTheSameFingerprintIsIgnored() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(5).permutomino(30);
+        Vertex[] other = new PolygonGenerator(6).permutomino(30);
+        PartitionCache cache = new PartitionCache(dir.toString());
+        cache.save(polygon, new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon)));
+        Files.copy(cache.file(polygon), cache.file(other)); // as if both polygons had the same fingerprint
+
+        assertNull(cache.load(other));
+    }
+
+    @Test
+    void corruptFileIsIgnored() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(5).permutomino(30);
+        PartitionCache cache = new PartitionCache(dir.toString());
+        Files.write(cache.file(polygon), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertNull(cache.load(polygon));
+    }
+
+    @Test
+    void fileWithIndicesOutOfRangeIsIgnored() throws IOException {
+        Vertex[] polygon = new PolygonGenerator(5).permutomino(30);
+        DCELSnapshot snapshot = new DCELSnapshot(TAA_proj.buildPartitionedCompactDCEL(polygon));
+        PartitionCache cache = new PartitionCache(dir.toString());
+        ByteBuffer bytes = DCELSnapshotTest.withTwin(snapshot, 3, snapshot.halfEdgeCount() + 5); // the sizes are still right
+        Files.write(cache.file(polygon), Arrays.copyOfRange(bytes.array(), 0, bytes.limit()));
+
+        assertNull(cache.load(polygon));
+    }
+}
@@ -0,0 +1,28 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PointLocatorTest {
+    @Test
+    void pointsAreLocatedInTheFaceWithTheirWalls() {
+        Vertex[] polygon = new PolygonGenerator(2).permutomino(60);
+        DCEL walls = TAA_proj.buildPartitionedDCEL(polygon); // left as it is, for countWalls
+        Random random = new Random(1);
+
+        for (int g = 0; g < polygon.length; g += 7) {
+            Vertex guard = polygon[g];
+            DCEL dcel = TAA_proj.buildPartitionedDCEL(polygon);
+            dcel.verbose = false;
+            dcel.computeVisibility(guard);
+            PointLocator locator = new PointLocator(dcel);
+
+            for (int i = 0; i < 500; i++) {
+                Vertex p = new Vertex(-1 + random.nextDouble() * 32, -1 + random.nextDouble() * 32);
+                int expected = TAA_proj.inPolygon(polygon, p) ? walls.countWalls(guard, p) : -1;
+                assertEquals(expected, locator.wallsAt(p.x, p.y), "guard (" + guard.x + "," + guard.y + "), point (" + p.x + "," + p.y + ")");
+            }
+        }
+    }
+}
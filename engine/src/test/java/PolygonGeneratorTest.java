@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class PolygonGeneratorTest {
+    @Test
+    void permutominoUsesEveryCoordinateOnce() {
+        int n = 100;
+        Vertex[] polygon = new PolygonGenerator(1).permutomino(n);
+
+        assertEquals(n, polygon.length);
+        int[] xs = new int[n / 2], ys = new int[n / 2];
+        for (int i = 0; i < n; i++) {
+            Vertex a = polygon[i], b = polygon[(i + 1) % n], c = polygon[(i + 2) % n];
+            assertTrue((a.x == b.x) != (a.y == b.y), "edge " + i + " is not horizontal nor vertical");
+            assertTrue((a.x == b.x) != (b.x == c.x), "edges " + i + " and " + (i + 1) + " are collinear");
+            xs[(int) a.x]++;
+            ys[(int) a.y]++;
+        }
+        int[] twice = new int[n / 2];
+        Arrays.fill(twice, 2);
+        assertArrayEquals(twice, xs); // one vertical edge on every vertical grid line
+        assertArrayEquals(twice, ys);
+    }
+
+    @Test
+    void sameSeedGivesTheSamePolygon() {
+        assertArrayEquals(new PolygonGenerator(7).permutomino(60), new PolygonGenerator(7).permutomino(60));
+        assertFalse(Arrays.equals(new PolygonGenerator(7).permutomino(60), new PolygonGenerator(8).permutomino(60)));
+    }
+
+    @Test
+    void expandedPolygonStartsAtTheLeftOfTheBottomEdge() {
+        PolygonGenerator generator = new PolygonGenerator(3);
+        for (int t = 0; t < 50; t++) {
+            Vertex[] polygon = generator.expand(generator.permutomino(20));
+            int n = polygon.length;
+            double ymin = Arrays.stream(polygon).mapToDouble(v -> v.y).min().getAsDouble();
+
+            // in cw order, so the first vertex of the rotated polygon is the last one and the bottom edge goes from the one before it
+            assertEquals(ymin, polygon[n - 1].y);
+            assertEquals(ymin, polygon[n - 2].y);
+            assertTrue(polygon[n - 1].x < polygon[n - 2].x);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QueryServerTest {
+    static final Path POLYGON = Paths.get("..", "GenPols_RectParts_TAA", "OldExamples", "Pol_30_swerc", "grid_pol_30_exp");
+
+    @TempDir
+    Path dir;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private QueryServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {server.stop();}
+    }
+
+    @Test
+    void answersAreWhatBatchModeWrites() throws Exception {
+        Files.copy(POLYGON, dir.resolve("pol"));
+        start(new QueryServer(0, 4, 1 << 24, dir));
+        Vertex[] polygon = TAA_proj.readVertices(new NumberReader(POLYGON.toString()));
+
+        StringBuilder queries = new StringBuilder();
+        StringBuilder answers = new StringBuilder();
+        for (int k : new int[] {0, 2, 0}) { // the second 0 comes from the cache of answers
+            for (int i = 0; i < polygon.length; i += 5) {
+                queries.append(polygon[i].x).append(' ').append(polygon[i].y).append(' ').append(k).append('\n');
+                HttpResponse<String> response = get("/query?polygon=pol&x=" + polygon[i].x + "&y=" + polygon[i].y + "&k=" + k);
+                assertEquals(200, response.statusCode());
+                answers.append(response.body());
+            }
+        }
+        Path queryFile = Files.write(dir.resolve("queries"), queries.toString().getBytes());
+        Path output = dir.resolve("output");
+        TAA_proj.runBatch(new String[] {"--batch", POLYGON.toString(), queryFile.toString(), output.toString()});
+
+        assertEquals(new String(Files.readAllBytes(output)), answers.toString());
+    }
+
+    @Test
+    void namesOutsideTheDirectoryAreRejected() throws Exception {
+        Files.copy(POLYGON, dir.resolve("pol"));
+        start(new QueryServer(0, 2, 1 << 20, dir.resolve("sub")));
+
+        for (String name : new String[] {"..", ".", "", "../pol", "/etc/passwd", dir.resolve("pol").toString(), "a\\b"}) {
+            HttpResponse<String> response = get("/query?polygon=" + URLEncoder.encode(name, StandardCharsets.UTF_8) + "&x=0&y=0&k=0");
+            assertEquals(400, response.statusCode(), name);
+        }
+    }
+
+    @Test
+    void statusTellsWhatWentWrong() throws Exception {
+        Files.copy(POLYGON, dir.resolve("pol"));
+        Files.write(dir.resolve("text"), "not a polygon\n".getBytes());
+        start(new QueryServer(0, 2, 1 << 20, dir));
+
+        assertEquals(404, get("/query?polygon=none&x=0&y=0&k=0").statusCode());
+        for (String query : new String[] {"polygon=pol&x=0&y=0", "polygon=pol&x=zero&y=0&k=0", "polygon=pol&x=0&y=0&k=1.5", "polygon=pol&x=0&y=0&k=1",
+                                          "polygon=pol&x=-5&y=-5&k=0", "polygon=text&x=0&y=0&k=0"}) {
+            assertEquals(400, get("/query?" + query).statusCode(), query);
+        }
+    }
+
+    @Test
+    void failuresAreNotShownToTheClient() throws Exception {
+        start(new QueryServer(0, 2, 1 << 20, dir) {
+            @Override
+            public String answer(String name, double x, double y, int k) throws IOException {
+                if (k == 0) throw new IOException("cannot map " + dir.resolve(name));
+                throw new IllegalArgumentException("bad partition in " + dir.resolve(name)); // not a fault of the query
+            }
+        });
+
+        for (int k : new int[] {0, 2}) {
+            HttpResponse<String> response = get("/query?polygon=pol&x=0&y=0&k=" + k);
+            assertEquals(500, response.statusCode());
+            assertFalse(response.body().contains(dir.toString()), response.body());
+        }
+    }
+
+    @Test
+    void concurrentQueriesReadThePolygonOnce() throws Exception {
+        Files.copy(POLYGON, dir.resolve("pol"));
+        QueryServer queries = new QueryServer(0, 2, 1 << 24, dir);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<QueryServer.Polygon>> polygons = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                polygons.add(pool.submit(() -> queries.polygon("pol")));
+            }
+            for (Future<QueryServer.Polygon> polygon : polygons) {
+                assertSame(polygons.get(0).get(), polygon.get());
+            }
+        } finally {
+            pool.shutdown();
+            queries.stop();
+        }
+    }
+
+    private void start(QueryServer server) {
+        this.server = server;
+        server.start();
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.port() + path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
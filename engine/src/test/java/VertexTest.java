@@ -0,0 +1,42 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class VertexTest {
+    @Test
+    void equalVerticesHaveTheSameHash() {
+        assertEquals(new Vertex(1.5, -2), new Vertex(1.5, -2));
+        assertEquals(new Vertex(0.0, 3).hashCode(), new Vertex(-0.0, 3).hashCode());
+        assertNotEquals(new Vertex(1, 2), new Vertex(1 + 1e-9, 2)); // near, but not equal
+
+        Set<Vertex> set = new HashSet<>();
+        set.add(new Vertex(1, 2));
+        assertTrue(set.contains(new Vertex(1, 2)));
+        assertFalse(set.contains(new Vertex(2, 1)));
+    }
+
+    @Test
+    void nearVerticesAreFoundByTheIndex() {
+        Random random = new Random(4);
+        VertexIndex index = new VertexIndex();
+        Vertex[] added = new Vertex[1000];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = new Vertex(random.nextInt(100) * 0.125, random.nextInt(100) * 0.125); // repeated points are added again
+            index.add(added[i]);
+        }
+        for (Vertex v : added) {
+            Vertex moved = new Vertex(v.x + (random.nextDouble() - 0.5) * Vertex.EPSILON, v.y + (random.nextDouble() - 0.5) * Vertex.EPSILON);
+            assertTrue(moved.near(v));
+            int id = index.indexOf(moved);
+            assertTrue(id >= 0 && index.get(id).near(v));
+        }
+        assertEquals(-1, index.indexOf(new Vertex(0.0625, 0.0625)));
+    }
+}